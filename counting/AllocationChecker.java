@@ -0,0 +1,68 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Class for checking that the steps of a chain do not get new memory once
+ * the code is warm: the graph checks work on the workspace of the thread.
+ * A chain on a graph with 30 variables makes several rounds of steps, and
+ * the bytes allocated by the thread in every round after the first ones
+ * must be 0. The exit status is 1 if they are not
+ * @author mgomez, jmpeña
+ */
+public class AllocationChecker {
+   /**
+    * Number of variables of the graph
+    */
+   private static final int VARIABLES = 30;
+   /**
+    * Number of steps of every round
+    */
+   private static final int STEPS = 200000;
+   /**
+    * Number of rounds, and number of them for warming up (not checked)
+    */
+   private static final int ROUNDS = 6;
+   private static final int WARM_UP_ROUNDS = 3;
+
+   /**
+    * Main method
+    *
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      com.sun.management.ThreadMXBean threads =
+              (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      boolean ok = true;
+
+      // Makes a chain as the simulation does, with a fixed seed
+      MCMC simulation = new MCMC(VARIABLES, STEPS, 1, 0);
+      simulation.setSeed(1);
+      SampleGenerator chain = new SampleGenerator(VARIABLES, STEPS, 1, 0, simulation);
+      chain.prepare();
+
+      // Measures the bytes allocated by every round of steps
+      for (int round = 0; round < ROUNDS; round++) {
+         long before = threads.getCurrentThreadAllocatedBytes();
+         chain.advance(STEPS);
+         long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+         boolean warm = (round >= WARM_UP_ROUNDS);
+         System.out.println("Round " + round + ": " + allocated + " bytes allocated"
+                 + (warm ? "" : " (warming up)"));
+         if (warm && allocated != 0) {
+            ok = false;
+         }
+      }
+
+      // Shows the result
+      System.out.println(ok ? "OK: no allocation once warm" : "FAILED: the steps allocate memory");
+      if (!ok) {
+         System.exit(1);
+      }
+   }
+}
@@ -0,0 +1,161 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+/**
+ * Class for storing the result of the checks of graphs already visited,
+ * using the state hash of the graphs as key. The cache has a fixed
+ * capacity: the entries are grouped in sets of four, and when a set is
+ * full an entry not used recently is replaced (clock algorithm within
+ * the set). A cache must not be shared between threads
+ * @author mgomez, jmpeña
+ */
+public class CheckCache {
+   /**
+    * Results of a lookup
+    */
+   static final int UNKNOWN = -1;
+   static final int INVALID = 0;
+   static final int VALID = 1;
+   /**
+    * Number of entries of every set
+    */
+   private static final int WAYS = 4;
+   /**
+    * Bits for the state of every entry
+    */
+   private static final byte USED = 1;
+   private static final byte RESULT = 2;
+   private static final byte REFERENCED = 4;
+   /**
+    * Data members to store the keys and the state of the entries
+    */
+   private final long keys[];
+   private final byte states[];
+   /**
+    * Data member to store the clock hand of every set
+    */
+   private final byte hands[];
+   /**
+    * Mask for getting the set of a key
+    */
+   private final int mask;
+   /**
+    * Counters of hits and misses
+    */
+   private long hits;
+   private long misses;
+
+   /**
+    * Class constructor
+    *
+    * @param capacity minimum number of entries (rounded up to a power of 2)
+    */
+   public CheckCache(int capacity) {
+      int sets = 1;
+      while (sets * WAYS < capacity) {
+         sets <<= 1;
+      }
+
+      // Gets space for the entries
+      keys = new long[sets * WAYS];
+      states = new byte[sets * WAYS];
+      hands = new byte[sets];
+      mask = sets - 1;
+      hits = 0;
+      misses = 0;
+   }
+
+   /**
+    * Looks for the result of the check of a graph
+    *
+    * @param key state hash of the graph
+    * @return VALID, INVALID or UNKNOWN if it is not stored
+    */
+   public int get(long key) {
+      int first = set(key) * WAYS;
+      int result = UNKNOWN;
+
+      for (int i = first; i < first + WAYS && result == UNKNOWN; i++) {
+         if ((states[i] & USED) != 0 && keys[i] == key) {
+            states[i] |= REFERENCED;
+            result = ((states[i] & RESULT) != 0) ? VALID : INVALID;
+         }
+      }
+
+      // Updates the counters
+      if (result == UNKNOWN) {
+         misses++;
+      } else {
+         hits++;
+      }
+
+      // Return the result
+      return result;
+   }
+
+   /**
+    * Stores the result of the check of a graph
+    *
+    * @param key state hash of the graph
+    * @param valid result of the check
+    */
+   public void put(long key, boolean valid) {
+      int set = set(key);
+      int first = set * WAYS;
+      int slot = -1;
+
+      // Looks for a free entry
+      for (int i = first; i < first + WAYS && slot == -1; i++) {
+         if ((states[i] & USED) == 0) {
+            slot = i;
+         }
+      }
+
+      // Otherwise, the first entry not referenced since the hand passed
+      // over it is replaced
+      while (slot == -1) {
+         int i = first + hands[set];
+         hands[set] = (byte) ((hands[set] + 1) % WAYS);
+         if ((states[i] & REFERENCED) != 0) {
+            states[i] &= ~REFERENCED;
+         } else {
+            slot = i;
+         }
+      }
+
+      // Stores the entry
+      keys[slot] = key;
+      states[slot] = (byte) (USED | (valid ? RESULT : 0));
+   }
+
+   /**
+    * Gets the number of lookups finding the result
+    *
+    * @return
+    */
+   public long getHits() {
+      return hits;
+   }
+
+   /**
+    * Gets the number of lookups not finding the result
+    *
+    * @return
+    */
+   public long getMisses() {
+      return misses;
+   }
+
+   /**
+    * Gets the set for a key
+    *
+    * @param key
+    * @return
+    */
+   private int set(long key) {
+      return (int) (key ^ (key >>> 32)) & mask;
+   }
+}
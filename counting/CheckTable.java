@@ -0,0 +1,170 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class for storing the result of the check of every graph with a few
+ * variables. The graphs are indexed by their code as PackedGraph (2 bits
+ * per pair of nodes), and the results are kept as a bitset in a file,
+ * which is mapped into memory when loaded: after that, checking a graph
+ * is a single bit lookup. The file begins with the number of variables
+ * @author mgomez, jmpeña
+ */
+public class CheckTable {
+   /**
+    * Maximum number of variables: 4^15 graphs for 6 variables, which
+    * gives a file of 128 MB
+    */
+   static final int MAX_VARIABLES = 6;
+   /**
+    * Size of the header of the file (bytes)
+    */
+   private static final int HEADER = 8;
+   /**
+    * Data member to store the number of variables
+    */
+   private final int numberVariables;
+   /**
+    * Data member to store the bits with the results
+    */
+   private final ByteBuffer bits;
+
+   /**
+    * Class constructor
+    *
+    * @param numVariables
+    * @param bits
+    */
+   private CheckTable(int numVariables, ByteBuffer bits) {
+      this.numberVariables = numVariables;
+      this.bits = bits;
+   }
+
+   /**
+    * Gets the result of the check of a graph
+    *
+    * @param code code of the graph, as returned by PackedGraph.getState
+    * @return
+    */
+   public boolean isValid(long code) {
+      return (bits.getLong(HEADER + ((int) (code >>> 6) << 3)) & (1L << code)) != 0;
+   }
+
+   /**
+    * Gets the number of variables
+    *
+    * @return
+    */
+   public int getNumberVariables() {
+      return numberVariables;
+   }
+
+   /**
+    * Checks all the graphs with a certain number of variables and stores
+    * the results in a file
+    *
+    * @param numVariables
+    * @param fileName
+    * @return number of valid graphs
+    */
+   public static long build(int numVariables, String fileName) {
+      long numberGraphs = 1L << (2 * PackedGraph.numberPairs(numVariables));
+      long numberValid = 0;
+      PackedGraph graph = new PackedGraph(numVariables);
+
+      try {
+         RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+         long size = HEADER + (((numberGraphs + 63) >>> 6) << 3);
+         file.setLength(size);
+         ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+         buffer.putLong(0, numVariables);
+
+         // Checks the graphs, 64 for every word of the bitset
+         for (long first = 0; first < numberGraphs; first += 64) {
+            long word = 0;
+            for (int i = 0; i < 64 && first + i < numberGraphs; i++) {
+               graph.setState(first + i);
+               if (graph.check()) {
+                  word |= 1L << i;
+               }
+            }
+            buffer.putLong(HEADER + (int) ((first >>> 6) << 3), word);
+            numberValid += Long.bitCount(word);
+         }
+         file.close();
+      } catch (Exception e) {
+         System.out.println(e);
+         System.out.println("Problem creating check table file");
+         System.exit(0);
+      }
+
+      // Return the number of valid graphs
+      return numberValid;
+   }
+
+   /**
+    * Loads a table from a file, mapping it into memory
+    *
+    * @param fileName
+    * @return
+    */
+   public static CheckTable load(String fileName) {
+      CheckTable table = null;
+
+      try {
+         RandomAccessFile file = new RandomAccessFile(fileName, "r");
+         ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+         file.close();
+
+         // Checks the size matches the number of variables
+         int numVariables = (int) buffer.getLong(0);
+         long numberGraphs = 1L << (2 * PackedGraph.numberPairs(numVariables));
+         if (numVariables < 1 || numVariables > MAX_VARIABLES
+                 || buffer.capacity() != HEADER + (((numberGraphs + 63) >>> 6) << 3)) {
+            throw new IOException("Wrong size of check table");
+         }
+         table = new CheckTable(numVariables, buffer);
+      } catch (Exception e) {
+         System.out.println(e);
+         System.out.println("Problem reading check table file");
+         System.exit(0);
+      }
+
+      // Return the table
+      return table;
+   }
+
+   /**
+    * Main method for building a table
+    *
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      // Check the correct number of arguments
+      if (args.length != 2) {
+         System.out.printf("\n Program use: ");
+         System.out.printf("\n Java counting.CheckTable n_vars file_name (n_vars <= " + MAX_VARIABLES + ")\n");
+         System.exit(0);
+      }
+
+      // Gets the values for the arguments
+      int numVars = Integer.parseInt(args[0]);
+      String fileName = args[1];
+      if (numVars < 1 || numVars > MAX_VARIABLES) {
+         System.out.println("Number of variables out of range: " + numVars);
+         System.exit(0);
+      }
+
+      // Builds the table
+      double clock_init = System.currentTimeMillis();
+      long numberValid = build(numVars, fileName);
+      System.out.println("Variables: " + numVars + "  valid graphs: " + numberValid
+              + "  time: " + (System.currentTimeMillis() - clock_init) / 1000 + " s");
+   }
+}
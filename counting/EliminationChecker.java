@@ -0,0 +1,249 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.util.Random;
+
+/**
+ * Class for checking that the elimination of sinks of Graph, driven by the
+ * set of pending nodes, gives the same result as the original method with
+ * passes over all the nodes: the same verdict (pdag or not) and the same
+ * dag from cpdagToDag. Every graph is compared with its arcs and without
+ * them (the graph eliminated by check). The graphs are random graphs with
+ * arcs and links and the proposals of random chains. The exit status is 1
+ * if some result differs
+ * @author mgomez, jmpeña
+ */
+public class EliminationChecker {
+   /**
+    * Number of random graphs with few variables, and maximum number of
+    * variables for them
+    */
+   private static final int RANDOM_GRAPHS = 20000;
+   private static final int MAX_SMALL_VARIABLES = 13;
+   /**
+    * Numbers of variables of the chains and steps of every chain
+    */
+   private static final int CHAIN_VARIABLES[] = {20, 70};
+   private static final int CHAIN_STEPS = 20000;
+   /**
+    * Data member to store the number of comparisons, of pdags and of
+    * differences
+    */
+   private static int comparisons = 0;
+   private static int pDags = 0;
+   private static int differences = 0;
+
+   /**
+    * Main method
+    *
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      Random generator = new Random(0);
+
+      // Random graphs: every pair of nodes gets an arc, a link or nothing
+      for (int i = 0; i < RANDOM_GRAPHS; i++) {
+         int n = 2 + generator.nextInt(MAX_SMALL_VARIABLES - 1);
+         double arcs = generator.nextDouble();
+         double links = generator.nextDouble() * (1 - arcs);
+         Graph graph = new Graph(n);
+         for (int x = 0; x < n; x++) {
+            for (int y = x + 1; y < n; y++) {
+               double value = generator.nextDouble();
+               if (value < arcs) {
+                  if (generator.nextBoolean()) {
+                     graph.addArc(x, y);
+                  } else {
+                     graph.addArc(y, x);
+                  }
+               } else if (value < arcs + links) {
+                  graph.addLink(x, y);
+               }
+            }
+         }
+         compareWithAndWithoutArcs(graph);
+      }
+      System.out.println("Random graphs: " + comparisons + " compared (" + pDags
+              + " pdags), " + differences + " different");
+
+      // Chains: every proposal is compared before keeping or undoing it
+      for (int n : CHAIN_VARIABLES) {
+         int initialComparisons = comparisons;
+         int initialPDags = pDags;
+         int initialDifferences = differences;
+         Graph graph = new Graph(n);
+         for (int step = 0; step < CHAIN_STEPS; step++) {
+            if (ProtectedArrowsChecker.propose(graph, generator)) {
+               compareWithAndWithoutArcs(graph);
+               if (!graph.check()) {
+                  graph.undo();
+               }
+            }
+         }
+         System.out.println("Chain with " + n + " variables: " + (comparisons - initialComparisons)
+                 + " compared (" + (pDags - initialPDags) + " pdags), "
+                 + (differences - initialDifferences) + " different");
+      }
+
+      // Shows the result
+      System.out.println(differences == 0 ? "OK: same results" : "FAILED: " + differences + " different results");
+      if (differences != 0) {
+         System.exit(1);
+      }
+   }
+
+   /**
+    * Compares the results of both methods on a graph and on a copy of it
+    * without arcs
+    *
+    * @param graph
+    */
+   private static void compareWithAndWithoutArcs(Graph graph) {
+      compare(graph);
+
+      Graph withoutArcs = new Graph(graph);
+      withoutArcs.removeDirectedLinks();
+      compare(withoutArcs);
+   }
+
+   /**
+    * Compares the results of both methods on a graph: the verdict and
+    * the dag
+    *
+    * @param graph
+    */
+   private static void compare(Graph graph) {
+      int n = graph.getNumberVariables();
+      int expectedDag[][] = new int[n][n];
+      boolean expected = cpdagToDag(graph.getGraph(), n, expectedDag);
+      Graph dag = graph.cpdagToDag();
+
+      comparisons++;
+      if (expected) {
+         pDags++;
+      }
+      boolean same = (dag.isPDag() == expected);
+      int result[][] = dag.getGraph();
+      for (int i = 0; i < n && same; i++) {
+         for (int j = 0; j < n && same; j++) {
+            same = (result[i][j] == expectedDag[i][j]);
+         }
+      }
+      if (!same) {
+         differences++;
+         if (differences == 1) {
+            System.out.println("First difference: expected " + expected + ", got " + dag.isPDag());
+            graph.print();
+            dag.print();
+         }
+      }
+   }
+
+   /**
+    * Original method for converting a cpdag into a dag: the nodes are
+    * examined in passes over all of them, removing every sink that forms
+    * a complete component with its neighbours and parents
+    *
+    * @param graph matrix of the graph
+    * @param numberVariables
+    * @param dag matrix where the links get directed towards the removed
+    * nodes
+    * @return true if all the nodes were removed (pdag)
+    */
+   private static boolean cpdagToDag(int graph[][], int numberVariables, int dag[][]) {
+      // Array for storing processed nodes
+      int marked[] = new int[numberVariables];
+
+      // Process the nodes one by one
+      int toProcess = numberVariables;
+      boolean pDag = true;
+      while (toProcess > 0 && pDag) {
+         pDag = false;
+
+         // Consider the variables
+         for (int i = 0; i < numberVariables; i++) {
+            // The node must be unprocessed, must be a sink and must
+            // form a complete component with its neighbours and parents
+            // of the node
+            if (marked[i] == 0 && isSink(graph, numberVariables, i, marked)
+                    && isComplete(graph, numberVariables, i, marked)) {
+               // This variable is marked as processed and the links
+               // will be directed towards it
+               toProcess--;
+               marked[i] = 1;
+
+               // The process must go on with another node
+               pDag = true;
+
+               // Give direction to the links
+               for (int j = 0; j < numberVariables; j++) {
+                  if (marked[j] == 0 && graph[j][i] != Graph.NONE) {
+                     dag[j][i] = Graph.DIRECTED;
+                  }
+               }
+            }
+         }
+      }
+
+      // Return the verdict
+      return pDag;
+   }
+
+   /**
+    * Original test of the complete component of a node
+    *
+    * @param graph matrix of the graph
+    * @param numberVariables
+    * @param node node to consider
+    * @param processed list of processed nodes
+    * @return
+    */
+   private static boolean isComplete(int graph[][], int numberVariables, int node, int[] processed) {
+      boolean result = true;
+
+      // Considers neighbours and parents of node
+      for (int i = 0; i < numberVariables && result; i++) {
+         // Only for non processed nodes and neighbours of node
+         if (processed[i] == 0 && graph[i][node] == Graph.UNDIRECTED) {
+            // Considers the parents
+            for (int j = 0; j < numberVariables && result; j++) {
+               if (j != i && processed[j] == 0 && graph[j][node] != Graph.NONE
+                       && graph[i][j] == Graph.NONE && graph[j][i] == Graph.NONE) {
+                  result = false;
+               }
+            }
+         }
+      }
+
+      // Return result
+      return result;
+   }
+
+   /**
+    * Original test of a sink
+    *
+    * @param graph matrix of the graph
+    * @param numberVariables
+    * @param node node to check
+    * @param processed list of processed nodes
+    * @return
+    */
+   private static boolean isSink(int graph[][], int numberVariables, int node, int processed[]) {
+      boolean result = true;
+
+      // Considers the rest of nodes
+      for (int i = 0; i < numberVariables && result; i++) {
+         // Only considers non processed nodes
+         if (processed[i] == 0 && graph[node][i] == Graph.DIRECTED) {
+            // Node is not a sink
+            result = false;
+         }
+      }
+
+      // return result
+      return result;
+   }
+}
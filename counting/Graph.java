@@ -5,12 +5,19 @@
 package counting;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Class for representing and managing graphs
  * @author mgomez, jmpeña
  */
-public class Graph implements Serializable{
+public class Graph implements Serializable, GraphEngine{
+
+   /**
+    * Serial version kept equal to the one computed for the original
+    * class, so that the samples already stored can be read
+    */
+   private static final long serialVersionUID = 5684204932586503521L;
 
    /**
     * Constants for links
@@ -18,6 +25,13 @@ public class Graph implements Serializable{
    final static int NONE = 0;
    final static int DIRECTED = 1;
    final static int UNDIRECTED = 2;
+   /**
+    * Constants for the changes stored in the journal
+    */
+   private final static int SET_ARC = 0;
+   private final static int CLEAR_ARC = 1;
+   private final static int SET_LINK = 2;
+   private final static int CLEAR_LINK = 3;
    /**
     * Data member to store the number of variables
     */
@@ -27,6 +41,18 @@ public class Graph implements Serializable{
     * representing the graph
     */
    private int graph[][];
+   /**
+    * Data members to store, for every node, the sets of parents, children
+    * and neighbours as bitsets (words of 64 bits). They are derived from
+    * graph data member and kept updated by every change on it
+    */
+   private transient long parents[][];
+   private transient long children[][];
+   private transient long neighbours[][];
+   /**
+    * Data member to store the number of words used by every bitset
+    */
+   private transient int numberWords;
    /**
     * Data member to store the ancestral order of the nodes
     */
@@ -48,13 +74,59 @@ public class Graph implements Serializable{
     */
    private int lastX, lastY, lastZ;
    /**
-    * Stores the number of arcs and links
+    * Stores the number of arcs and links. They are kept updated by every
+    * change on the graph
     */
    private int numberArcs, numberLinks;
    /**
     * Stores the code of the last operation
     */
    private Operations lastOperation;
+   /**
+    * Data member to store the auxiliary structures used by the checks
+    */
+   private transient GraphWorkspace workspace;
+   /**
+    * Data members to store a topological order of the nodes according to
+    * the arcs: the position of every node and the node at every position.
+    * The order is repaired when an arc is added against it
+    */
+   private transient int position[];
+   private transient int nodeAt[];
+   /**
+    * Data members to store the arc not included in the order because it
+    * closes a directed cycle (-1 if there is none), and if the order is
+    * valid (false when more arcs are left out of it)
+    */
+   private transient int cycleTail, cycleHead;
+   private transient boolean orderValid;
+   /**
+    * Data members for tracking the connected components of the skeleton
+    * (only if enabled): the label of the component of every node (the
+    * label is always one of the nodes of the component) and the number
+    * of components
+    */
+   private transient int component[];
+   private transient int numberSkeletonComponents;
+   /**
+    * Data member to store the hash of the graph: the xor of the keys of
+    * all the cells with an arc or a link (Zobrist hashing), kept updated
+    * by every change on the graph
+    */
+   private transient long stateHash;
+   /**
+    * Data members for the journal of changes, used while there are
+    * checkpoints: every change on the cells is stored encoded in a long
+    * (kind of change and nodes), so that the changes can be reverted in
+    * reverse order
+    */
+   private transient long journal[];
+   private transient int journalSize;
+   private transient boolean journaling;
+   /**
+    * Data member to store the number of checkpoints not released yet
+    */
+   private transient int openCheckpoints;
 
    /**
     * Class constructor
@@ -76,6 +148,9 @@ public class Graph implements Serializable{
          }
       }
 
+      // Gets space for the bitsets (all of them empty)
+      buildBitsets();
+
       // Gets space for order
       order = null;
 
@@ -108,6 +183,9 @@ public class Graph implements Serializable{
          }
       }
 
+      // Builds the bitsets for the copied graph
+      buildBitsets();
+
       // Gets space for order
       order = null;
 
@@ -116,9 +194,9 @@ public class Graph implements Serializable{
       lastY = -1;
       lastOperation = Operations.NOOP;
 
-      // Initialize the number of arcs and links
-      numberArcs = 0;
-      numberLinks = 0;   
+      // Copies the number of arcs and links
+      numberArcs = originalGraph.numberArcs;
+      numberLinks = originalGraph.numberLinks;
    }
 
    /**
@@ -140,7 +218,7 @@ public class Graph implements Serializable{
     */
    public void addArc(int x, int y) {
       // Perform the change
-      graph[x][y] = DIRECTED;
+      setArc(x, y);
 
       // Stores the nodes of the last operation
       lastX = x;
@@ -168,7 +246,7 @@ public class Graph implements Serializable{
     */
    public  void deleteArc(int x, int y) {
       // Perform the change
-      graph[x][y] = NONE;
+      clearArc(x, y);
 
       // Stores the nodes and the last operation
       lastX = x;
@@ -196,8 +274,7 @@ public class Graph implements Serializable{
     */
    public void addLink(int x, int y) {
       // Perform the changes
-      graph[x][y] = UNDIRECTED;
-      graph[y][x] = UNDIRECTED;
+      setLink(x, y);
 
       // Stores the last operation
       lastX = x;
@@ -225,8 +302,7 @@ public class Graph implements Serializable{
    public void deleteLink(int x, int y) {
       if (graph[x][y] == UNDIRECTED) {
          // Perform the operation
-         graph[x][y] = NONE;
-         graph[y][x] = NONE;
+         clearLink(x, y);
 
          // Stores the last operation data
          lastX = x;
@@ -258,8 +334,8 @@ public class Graph implements Serializable{
     */
    public void addVStructure(int x, int y, int z) {
       // Perform the changes
-      graph[x][z] = DIRECTED;
-      graph[y][z] = DIRECTED;
+      setArc(x, z);
+      setArc(y, z);
 
       // Store the last operation data
       lastX = x;
@@ -290,8 +366,8 @@ public class Graph implements Serializable{
     */
    public void deleteVStructure(int x, int y, int z) {
       // Perform the changes
-      graph[x][z] = NONE;
-      graph[y][z] = NONE;
+      clearArc(x, z);
+      clearArc(y, z);
 
       // Store the last operation data
       lastX = x;
@@ -301,7 +377,7 @@ public class Graph implements Serializable{
    }   
    
    /**
-    * Undo the last operation
+    * Undo the last operation. A second call does nothing
     */
    public void undo() {
       switch (lastOperation) {
@@ -310,35 +386,104 @@ public class Graph implements Serializable{
             break;
 
          case ADDARC:
-            graph[lastX][lastY] = NONE;
+            clearArc(lastX, lastY);
             break;
 
          case DELETEARC:
-            graph[lastX][lastY] = DIRECTED;
+            setArc(lastX, lastY);
             break;
 
          case ADDLINK:
-            graph[lastX][lastY] = NONE;
-            graph[lastY][lastX] = NONE;
+            clearLink(lastX, lastY);
             break;
 
          case DELETELINK:
-            graph[lastX][lastY] = UNDIRECTED;
-            graph[lastY][lastX] = UNDIRECTED;
+            setLink(lastX, lastY);
             break;
 
          case ADDVSTRUCTURE:
-            graph[lastX][lastZ] = NONE;
-            graph[lastY][lastZ] = NONE;
+            clearArc(lastX, lastZ);
+            clearArc(lastY, lastZ);
             break;
 
          case DELETEVSTRUCTURE:
-            graph[lastX][lastZ] = DIRECTED;
-            graph[lastY][lastZ] = DIRECTED;
+            setArc(lastX, lastZ);
+            setArc(lastY, lastZ);
             break;
       }
+
+      // The operation is undone only once
+      lastOperation = Operations.NOOP;
    }   
    
+   /**
+    * Marks a point the graph can be taken back to with rollback, whatever
+    * the number of operations done after it. Checkpoints can be nested
+    *
+    * @return mark of the checkpoint
+    */
+   public int checkpoint() {
+      if (journal == null) {
+         journal = new long[16];
+      }
+      journaling = true;
+      openCheckpoints++;
+      return journalSize;
+   }
+
+   /**
+    * Reverts all the changes done after a checkpoint. The checkpoint is
+    * kept, so the graph can be taken back to it again
+    *
+    * @param mark mark returned by checkpoint
+    */
+   public void rollback(int mark) {
+      // The changes done for reverting are not stored
+      journaling = false;
+      while (journalSize > mark) {
+         long change = journal[--journalSize];
+         int x = (int) (change >>> 2) & 0x3FFFFFFF;
+         int y = (int) (change >>> 32);
+
+         switch ((int) change & 3) {
+            case SET_ARC:
+               clearArc(x, y);
+               break;
+
+            case CLEAR_ARC:
+               setArc(x, y);
+               break;
+
+            case SET_LINK:
+               clearLink(x, y);
+               break;
+
+            case CLEAR_LINK:
+               setLink(x, y);
+               break;
+         }
+      }
+      journaling = (openCheckpoints > 0);
+
+      // The last operation can not be undone any more
+      lastOperation = Operations.NOOP;
+   }
+
+   /**
+    * Ends the last checkpoint keeping the changes done after it (they can
+    * still be reverted by an enclosing checkpoint). Once the outermost
+    * checkpoint is released, the changes are not stored any more
+    */
+   public void release() {
+      if (openCheckpoints > 0) {
+         openCheckpoints--;
+         if (openCheckpoints == 0) {
+            journalSize = 0;
+            journaling = false;
+         }
+      }
+   }
+
    /**
     * Checks the graph
     *
@@ -352,18 +497,15 @@ public class Graph implements Serializable{
 
       // If no flags are detected, keeps on testing
       if (ok) {
-         // Compute the ancestral order
-         ok = (computeOrder() != -1);
+         // Check there are no directed cycles
+         ok = isAcyclic();
 
          if (ok) {
-            // Creates a new graph removing directed arrows
-            Graph newGraph = removesArcs();
-
-            // Creates a pdag from this new graph
-            Graph pdag = newGraph.cpdagToDag();
-
-            // Keeps on working if it is a pdag
-            ok = pdag.pDag;
+            // Checks if the graph without directed arrows admits a
+            // consistent extension (is a pdag)
+            GraphWorkspace space = getWorkspace();
+            space.fill(space.alive);
+            ok = eliminateNodes(space.alive, numberVariables, false, null);
 
             if (ok) {
                ok = containsStronglyProtectedArrows();
@@ -376,45 +518,162 @@ public class Graph implements Serializable{
    }
 
    /**
-    * Tests ig the graph contains a single connected component
+    * Checks the graph after the last operation, examining only the part of
+    * the graph affected by it. The graph previous to the last operation is
+    * assumed to pass check(): under this assumption the result is the same
+    * as the one of check()
     *
     * @return result of the check
     */
-   public boolean containsSingleComponent() {
-      int marked[] = new int[numberVariables];
-      int visited = 1;
+   public boolean checkLastOperation() {
+      boolean ok = true;
 
-      // Initialize all the positions to 0
+      switch (lastOperation) {
+         case ADDARC:
+            // Flags and arrows around the new arc and no cycles through it
+            ok = !containsFlagAround(lastX, lastY)
+                    && isAcyclic()
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case DELETEARC:
+            ok = !containsFlagAround(lastX, lastY)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case ADDLINK:
+            // The component of the link must admit a consistent extension
+            ok = !containsFlagAround(lastX, lastY)
+                    && isChordalComponent(lastX)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case DELETELINK:
+            ok = !containsFlagAround(lastX, lastY)
+                    && isChordalComponent(lastX) && isChordalComponent(lastY)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case ADDVSTRUCTURE:
+            ok = !containsFlagAround(lastX, lastZ) && !containsFlagAround(lastY, lastZ)
+                    && isAcyclic()
+                    && !containsUnprotectedArrowsAround(lastX, lastZ)
+                    && !containsUnprotectedArrowsAround(lastY, lastZ);
+            break;
+
+         case DELETEVSTRUCTURE:
+            ok = !containsFlagAround(lastX, lastZ) && !containsFlagAround(lastY, lastZ)
+                    && !containsUnprotectedArrowsAround(lastX, lastZ)
+                    && !containsUnprotectedArrowsAround(lastY, lastZ);
+            break;
+      }
+
+      // return ok
+      return ok;
+   }
+
+   /**
+    * Tests if the graph does not contain directed cycles. The test uses the
+    * topological order maintained by the changes on the graph, so it takes
+    * constant time unless the order must be computed again
+    *
+    * @return result of the check
+    */
+   public boolean isAcyclic() {
+      // Sorts the nodes again if the order was lost
+      if (!orderValid) {
+         sortTopologically();
+      }
+
+      // return the result
+      return orderValid && cycleTail == -1;
+   }
+
+   /**
+    * Enables the tracking of the connected components of the skeleton: from
+    * now on, every change on the graph keeps them updated, so that
+    * isConnected and getNumberSkeletonComponents take constant time
+    */
+   public void enableConnectivityTracking() {
+      component = new int[numberVariables];
+      for (int i = 0; i < numberVariables; i++) {
+         component[i] = -1;
+      }
+
+      // Labels the component of every node not labelled yet
+      numberSkeletonComponents = 0;
       for (int i = 0; i < numberVariables; i++) {
-         marked[i] = 0;
+         if (component[i] == -1) {
+            labelComponent(i, i);
+            numberSkeletonComponents++;
+         }
+      }
+   }
+
+   /**
+    * Tests if the graph contains a single connected component, using the
+    * components tracked by the changes on the graph if enabled
+    *
+    * @return result of the check
+    */
+   public boolean isConnected() {
+      boolean connected;
+
+      if (component != null) {
+         connected = (numberSkeletonComponents == 1);
+      } else {
+         connected = containsSingleComponent();
       }
 
+      // Return the result
+      return connected;
+   }
+
+   /**
+    * Gets the number of connected components of the skeleton. The tracking
+    * of the components must be enabled
+    *
+    * @return
+    */
+   public int getNumberSkeletonComponents() {
+      return numberSkeletonComponents;
+   }
+
+   /**
+    * Tests ig the graph contains a single connected component. The nodes
+    * reached from the first one are obtained with a search over the
+    * skeleton, in time linear in the number of nodes and edges
+    *
+    * @return result of the check
+    */
+   public boolean containsSingleComponent() {
+      GraphWorkspace space = getWorkspace();
+      long marked[] = space.visited;
+      int stack[] = space.stack;
+      int top = 0;
+      int visited = 1;
+
       // Begins labelling node 0 as marked
-      marked[0] = 1;
-
-      // Considers all the nodes
-      boolean stop = false;
-      while (!stop) {
-         stop = true;
-         for (int i = 0; i < numberVariables - 1; i++) {
-            for (int j = i + 1; j < numberVariables; j++) {
-               if ( // Required to consider a visited node
-                       (marked[i] == 1 || marked[j] == 1)
-                       && // And to consider some non-visited node
-                       (marked[i] == 0 || marked[j] == 0)
-                       && // Required a link between  both nodes
-                       (graph[i][j] != NONE || graph[j][i] != NONE)) {
-                  marked[i] = 1;
-                  marked[j] = 1;
-                  visited++;
-                  stop = false;
-               }
+      space.clear(marked);
+      include(marked, 0);
+      stack[top++] = 0;
+
+      // Search over the skeleton: every node adds its adjacent nodes
+      // not marked yet
+      while (top > 0) {
+         int node = stack[--top];
+         for (int w = 0; w < numberWords; w++) {
+            long word = adjacents(node, w) & ~marked[w];
+            marked[w] |= word;
+            while (word != 0) {
+               stack[top++] = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               visited++;
             }
          }
       }
 
-      // Return true if the previous loop finished with stop
-      // equals to false
+      // Return true if all the nodes were reached
       return (!(visited < numberVariables));
    }
 
@@ -424,21 +683,18 @@ public class Graph implements Serializable{
     * @return
     */
    public boolean doNotContainsUndirectedLinks() {
-      boolean doNotContains = true;
-      boolean stop = false;
-
-      // Check for undirected links
-      for (int i = 0; i < numberVariables - 1 && !stop; i++) {
-         for (int j = i + 1; j < numberVariables && !stop; j++) {
-            if (graph[i][j] == UNDIRECTED) {
-               doNotContains = false;
-               stop = true;
-            }
-         }
-      }
+      return numberLinks == 0;
+   }
 
-      // return the result
-      return doNotContains;
+   /**
+    * Sets the workspace to use for the checks. Reusing the same workspace
+    * for all the graphs checked by a thread avoids getting new memory
+    * space during the checks
+    *
+    * @param workspace
+    */
+   public void setWorkspace(GraphWorkspace workspace) {
+      this.workspace = workspace;
    }
 
    /**
@@ -450,6 +706,58 @@ public class Graph implements Serializable{
       return graph;
    }
 
+   /**
+    * Gets the graph as an object of Graph class: the graph itself
+    *
+    * @return
+    */
+   public Graph toGraph() {
+      return this;
+   }
+
+   /**
+    * Gets the hash of the graph. Two graphs with the same arcs and links
+    * have the same hash, whatever the way they were built
+    *
+    * @return
+    */
+   public long getStateHash() {
+      return stateHash;
+   }
+
+   /**
+    * Hash code of the graph, taken from the state hash
+    *
+    * @return
+    */
+   @Override
+   public int hashCode() {
+      return (int) (stateHash ^ (stateHash >>> 32));
+   }
+
+   /**
+    * Two graphs are equal if they have the same arcs and links
+    *
+    * @param object
+    * @return
+    */
+   @Override
+   public boolean equals(Object object) {
+      boolean equal = false;
+
+      if (object == this) {
+         equal = true;
+      } else if (object instanceof Graph) {
+         Graph other = (Graph) object;
+         equal = (other.numberVariables == numberVariables
+                 && other.stateHash == stateHash
+                 && Arrays.deepEquals(other.graph, graph));
+      }
+
+      // Return the result
+      return equal;
+   }
+
    /**
     * Gets the number of arcs
     *
@@ -468,6 +776,16 @@ public class Graph implements Serializable{
       return numberLinks;
    }
    
+   /**
+    * Tests if the graph was obtained by cpdagToDag from a pdag: all the
+    * nodes could be removed
+    *
+    * @return
+    */
+   boolean isPDag() {
+      return pDag;
+   }
+
    /**
     * Gets the number of variables
     * @return 
@@ -494,6 +812,8 @@ public class Graph implements Serializable{
     * Print information about the graph. Only for debugging purposes
     */
    public void printOrder() {
+      // The order is only computed on demand
+      computeOrder();
       for (int i = 0; i < numberVariables; i++) {
          System.out.print(order[i] + " ");;
       }
@@ -501,27 +821,15 @@ public class Graph implements Serializable{
    }
 
    /**
-    * Counts the numbers of arcs and links.The count of the
-    * links must be done on the upper part of the matrix to
-    * avoid a double count
+    * Counts the numbers of arcs and links. The numbers are kept updated
+    * by the changes on the graph, so they are already counted: the method
+    * is kept for the callers reading them afterwards with getNumberArcs
+    * and getNumberLinks
     */
    public void countArcsLinks() {
-      for (int i = 0; i < numberVariables; i++) {
-         for (int j = 0; j < numberVariables; j++) {
-            switch (graph[i][j]) {
-               case DIRECTED:
-                  numberArcs++;
-                  break;
-               case UNDIRECTED:
-                  if (j > i){
-                     numberLinks++;
-                  }
-                  break;
-            }
-         }
-      }
+      // Nothing to do: numberArcs and numberLinks are always up to date
    }
-   
+
    /**
     *Method to check if two nodes x and y are neighbor: there is a undirected link
     * between them
@@ -538,12 +846,14 @@ public class Graph implements Serializable{
     * @return graph
     */
    public void removeDirectedLinks(){      
+      RowKernels kernels = RowKernels.getInstance();
+
       // Now remove al the directed links
       for(int i=0; i < numberVariables; i++){
-         for(int j=0; j < numberVariables; j++){
-            if (graph[i][j] == DIRECTED){
-               graph[i][j]=NONE;
-            }
+         int j = kernels.indexOf(graph[i], 0, DIRECTED);
+         while (j != -1){
+            clearArc(i, j);
+            j = kernels.indexOf(graph[i], j + 1, DIRECTED);
          }
       }
    }
@@ -552,58 +862,77 @@ public class Graph implements Serializable{
    /**
     * Computes the ancestral order of the nodes and computes the number of
     * connected components int the graph. The method modifies the order data
-    * member, as well as numberComponents.
+    * member, as well as numberComponents. The order of a node is the length
+    * of the longest directed path ending in it, and it is computed visiting
+    * the nodes in topological order (a node is visited once all its parents
+    * were visited), so the cost is linear in the number of nodes and arcs
     *
-    * @return the number of components
+    * @return the biggest order, or -1 if there is a directed cycle
     */
    private int computeOrder() {
-      // Gets space for order data member
-      order = new int[numberVariables];
+      GraphWorkspace space = getWorkspace();
+      int pending[] = space.counters;
+      int stack[] = space.stack;
+      int top = 0;
+      int visited = 0;
+
+      // Gets space for order data member (only the first time)
+      if (order == null) {
+         order = new int[numberVariables];
+      }
 
-      // Sets initial values
+      // Sets initial values: the nodes without parents are ready
       for (int i = 0; i < numberVariables; i++) {
          order[i] = 0;
+         pending[i] = 0;
+         for (int w = 0; w < numberWords; w++) {
+            pending[i] += Long.bitCount(parents[i][w]);
+         }
+         if (pending[i] == 0) {
+            stack[top++] = i;
+         }
       }
 
-      // Makes the loop
+      // Proceed with the nodes
       numberComponents = 0;
-      boolean stopLoop = false;
-      boolean stopFor = false;
+      while (top > 0) {
+         int node = stack[--top];
+         visited++;
 
-      // Proceed with the nodes
-      while (!stopLoop) {
-         stopLoop = true;
-
-         // Consider nodes
-         for (int i = 0; i < numberVariables && !stopFor; i++) {
-            if (order[i] == numberComponents) {
-               for (int j = 0; j < numberVariables && !stopFor; j++) {
-                  if (graph[i][j] == DIRECTED) {
-                     // If the max order is not overcomed, set the order
-                     if (numberComponents < (numberVariables - 1)) {
-                        order[j] = (numberComponents + 1);
-                        stopLoop = false;
-                     } else {
-                        stopFor = true;
-                        numberComponents = 0;
-                     }
-                  }
+         // Keeps the biggest order
+         if (order[node] >= numberComponents) {
+            numberComponents = order[node] + 1;
+         }
+
+         // The children are after node
+         for (int w = 0; w < numberWords; w++) {
+            long word = children[node][w];
+            while (word != 0) {
+               int child = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               if (order[child] <= order[node]) {
+                  order[child] = order[node] + 1;
+               }
+               if (--pending[child] == 0) {
+                  stack[top++] = child;
                }
             }
          }
+      }
 
-         // Add one to actualOrder
-         if (!stopFor) {
-            numberComponents++;
-         }
+      // The nodes in a directed cycle are never visited
+      if (visited < numberVariables) {
+         numberComponents = 0;
       }
 
-      // Return the value of stop
+      // Return the biggest order (-1 if there is a cycle)
       return numberComponents - 1;
    }
 
    /**
-    * Checks if the graph contains flags
+    * Checks if the graph contains flags: arrows i->j where j has a
+    * neighbour k that is not a child of i. For every arrow the test is
+    * a single operation per word on the bitsets
     *
     * @return
     */
@@ -611,10 +940,15 @@ public class Graph implements Serializable{
       boolean ok = false;
 
       for (int i = 0; i < numberVariables && !ok; i++) {
-         for (int j = 0; j < numberVariables && !ok; j++) {
-            if (graph[i][j] == DIRECTED) {
-               for (int k = 0; k < numberVariables && !ok; k++) {
-                  if (graph[j][k] == UNDIRECTED && graph[i][k] != DIRECTED) {
+         for (int w = 0; w < numberWords && !ok; w++) {
+            long word = children[i][w];
+            while (word != 0 && !ok) {
+               int j = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+
+               // Neighbours of j not children of i
+               for (int v = 0; v < numberWords && !ok; v++) {
+                  if ((neighbours[j][v] & ~children[i][v]) != 0) {
                      ok = true;
                   }
                }
@@ -627,53 +961,24 @@ public class Graph implements Serializable{
    }
 
    /**
-    * Checks if the graph contains strongly protected arrows
+    * Checks if the graph contains strongly protected arrows. Every arrow
+    * is tested with isProtected, where each configuration is checked with
+    * a few operations on the bitsets of the nodes of the arrow (see
+    * ProtectedArrowsChecker for the comparison with the original test)
     *
     * @return
     */
-   private boolean containsStronglyProtectedArrows() {
+   boolean containsStronglyProtectedArrows() {
       boolean protectedArrow = true;
-      boolean stopExternalLoop = false, stopInternalLoop = false;
-
-      // Consider every variable
-      for (int i = 0; i < numberVariables && !stopExternalLoop; i++) {
-         for (int j = 0; j < numberVariables && !stopExternalLoop; j++) {
-            // Consider if the links between i and j (it it exists)
-            // is protected
-            if (graph[i][j] == DIRECTED) {
-               protectedArrow = false;
-               stopInternalLoop = false;
-
-               // Considers the third variable
-               for (int k = 0; k < numberVariables && !stopInternalLoop; k++) {
-                  // Considers the different alternatives
-                  if ( // SEVERAL CASES
-                          (graph[k][i] == DIRECTED && graph[j][k] == NONE && graph[k][j] == NONE)
-                          || (k != i && graph[k][j] == DIRECTED && graph[i][k] == NONE && graph[k][i] == NONE)
-                          || (graph[i][k] == DIRECTED && graph[k][j] == DIRECTED)) {
-                     protectedArrow = true;
-                     stopInternalLoop = true;
-                  }
-               }
-
-               stopInternalLoop = false;
-               // Considers protected arrows respect to 4 nodes
-               if (!protectedArrow) {
-                  for (int k = 0; k < numberVariables && !stopInternalLoop; k++) {
-                     for (int l = 0; l < numberVariables && !stopInternalLoop; l++) {
-                        if (k != l && graph[i][k] == UNDIRECTED && graph[i][l] == UNDIRECTED
-                                && graph[k][j] == DIRECTED && graph[l][j] == DIRECTED
-                                && graph[k][l] == NONE && graph[l][k] == NONE) {
-                           protectedArrow = true;
-                           stopInternalLoop = true;
-                        }
-                     }
-                  }
 
-                  if (!protectedArrow) {
-                     stopExternalLoop = true;
-                  }
-               }
+      // Consider every arrow i->j
+      for (int i = 0; i < numberVariables && protectedArrow; i++) {
+         for (int w = 0; w < numberWords && protectedArrow; w++) {
+            long word = children[i][w];
+            while (word != 0 && protectedArrow) {
+               int j = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               protectedArrow = isProtected(i, j);
             }
          }
       }
@@ -683,170 +988,329 @@ public class Graph implements Serializable{
    }
 
    /**
-    * Method for converting the cpdag represented by the object into a dag. The
-    * method returns a new graph changing the value of the pdag data member
-    * according to the check
+    * Checks if there are flags (i->j-k with no arc i->k) using the pair of
+    * nodes a and b as one of the three pairs of the flag. Auxiliary method
+    * for checkLastOperation
     *
-    * @return a new graph
+    * @param a
+    * @param b
+    * @return
     */
-   private Graph cpdagToDag() {
-      Graph dag;
+   private boolean containsFlagAround(int a, int b) {
+      return containsFlagAroundPair(a, b) || containsFlagAroundPair(b, a);
+   }
+
+   /**
+    * Checks the flags where the ordered pair (a,b) takes the role of i->j,
+    * j-k or i->k. Auxiliary method for containsFlagAround
+    *
+    * @param a
+    * @param b
+    * @return
+    */
+   private boolean containsFlagAroundPair(int a, int b) {
+      boolean found = false;
 
-      // Array for storing processed nodes
-      int marked[] = new int[numberVariables];
+      for (int w = 0; w < numberWords && !found; w++) {
+         // a->b as i->j: neighbours of b not children of a
+         if (graph[a][b] == DIRECTED && (neighbours[b][w] & ~children[a][w]) != 0) {
+            found = true;
+         }
 
-      // Sets 0 to all positions
-      for (int i = 0; i < numberVariables; i++) {
-         marked[i] = 0;
-      }
+         // a-b as j-k: parents of a not being parents of b
+         if (graph[a][b] == UNDIRECTED && (parents[a][w] & ~parents[b][w]) != 0) {
+            found = true;
+         }
 
-      // Gets memory space for dag data member. Also marks
-      // all the nodes as non processed
-      dag = new Graph(numberVariables);
+         // a and b as i and k without a->b: children of a neighbours of b
+         if (graph[a][b] != DIRECTED && (children[a][w] & neighbours[b][w]) != 0) {
+            found = true;
+         }
+      }
 
-      // Process the nodes one by one
-      int toProcess = numberVariables;
-      dag.pDag = true;
-      while (toProcess > 0 && dag.pDag) {
-         dag.pDag = false;
+      // Return the result
+      return found;
+   }
 
-         // Consider the variables
-         for (int i = 0; i < numberVariables; i++) {
-            // The node must be unprocessed, must be a sink and must
-            // form a complete component with its neighbours and parents
-            // of the node
-            if (marked[i] == 0 && isSink(i, marked) && isComplete(i, marked)) {
-               // This variable is marked as processed and the links
-               // will be directed towards it
-               toProcess--;
-               marked[i] = 1;
-
-               // The process must go on with another node
-               dag.pDag = true;
-
-               // Give direction to the links
-               for (int j = 0; j < numberVariables; j++) {
-                  if (marked[j] == 0 && graph[j][i] != NONE) { // Np bastaria si es NODIRIGIDO????
-                     dag.graph[j][i] = DIRECTED;
+   /**
+    * Checks if there are arrows not strongly protected among the arrows
+    * whose protection may depend on the pair of nodes a and b: the arrows
+    * of a or b and, if a and b are adjacent, the arrows i->j having a and b
+    * as neighbours of i and parents of j. Auxiliary method for
+    * checkLastOperation
+    *
+    * @param a
+    * @param b
+    * @return
+    */
+   private boolean containsUnprotectedArrowsAround(int a, int b) {
+      boolean found = false;
+
+      // Considers the arrows of a and b
+      found = containsUnprotectedArrowsOf(a) || containsUnprotectedArrowsOf(b);
+
+      // Considers the arrows for which a and b are the two parents
+      // of the configuration with four nodes
+      if (!found && (graph[a][b] != NONE || graph[b][a] != NONE)) {
+         for (int w = 0; w < numberWords && !found; w++) {
+            long tails = neighbours[a][w] & neighbours[b][w];
+            while (tails != 0 && !found) {
+               int i = (w << 6) + Long.numberOfTrailingZeros(tails);
+               tails &= tails - 1;
+
+               for (int v = 0; v < numberWords && !found; v++) {
+                  long heads = children[a][v] & children[b][v] & children[i][v];
+                  while (heads != 0 && !found) {
+                     int j = (v << 6) + Long.numberOfTrailingZeros(heads);
+                     heads &= heads - 1;
+                     if (!isProtected(i, j)) {
+                        found = true;
+                     }
                   }
                }
             }
          }
       }
 
-      // return dag
-      return dag;
+      // Return the result
+      return found;
    }
 
    /**
-    * Method to generate a cpdag from dag. This method will return a new graph
-    * with built from the current graph
+    * Checks if some arrow into or out of a node is not strongly protected
     *
-    * @return computed essential graph
+    * @param node
+    * @return
     */
-   private Graph dagToCpdag() {
-      // Compute the order for dag
-      computeOrder();
-
-      // Creates a new graph
-      Graph cpdag = new Graph(numberVariables);
-
-      // Order the arrows
-      int numberArrows = cpdag.orderArrows(this);
+   private boolean containsUnprotectedArrowsOf(int node) {
+      boolean found = false;
+
+      for (int w = 0; w < numberWords && !found; w++) {
+         long word = parents[node][w];
+         while (word != 0 && !found) {
+            int k = (w << 6) + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            found = !isProtected(k, node);
+         }
 
-      // Now it is needed to detect essential arrows
-      cpdag.detectEssentialArrows(numberArrows);
+         word = children[node][w];
+         while (word != 0 && !found) {
+            int k = (w << 6) + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            found = !isProtected(node, k);
+         }
+      }
 
-      // Return cpdag
-      return cpdag;
+      // Return the result
+      return found;
    }
 
    /**
-    * Method for detecting the essential arrows
+    * Checks if the arrow i->j is strongly protected: it takes part in one
+    * of the four configurations considered by containsStronglyProtectedArrows
     *
-    * @param numberArrows
+    * @param i tail of the arrow
+    * @param j head of the arrow
+    * @return
     */
-   private void detectEssentialArrows(int numberArrows) {
-      int aux, aux2 = numberArrows + 1, x = -1, y = -1;
-
-      // Loop while numberArrows > 0
-      while (numberArrows > 0) {
-         aux = aux2;
+   private boolean isProtected(int i, int j) {
+      boolean protectedArrow = false;
 
-         // Consider the variables
-         for (int i = 0; i < numberVariables; i++) {
-            for (int j = 0; j < numberVariables; j++) {
-               if (graph[i][j] > 0 && graph[i][j] < aux) {
-                  x = i;
-                  y = j;
-                  aux = graph[i][j];
-               }
-            }
+      for (int w = 0; w < numberWords && !protectedArrow; w++) {
+         // k->i with k and j non adjacent
+         if ((parents[i][w] & ~adjacents(j, w)) != 0) {
+            protectedArrow = true;
          }
 
-         // Set aux to 0
-         aux = 0;
+         // k->j with k and i non adjacent (k different from i)
+         long other = parents[j][w] & ~adjacents(i, w);
+         if (w == (i >>> 6)) {
+            other &= ~(1L << i);
+         }
+         if (other != 0) {
+            protectedArrow = true;
+         }
 
-         // Consider the variables
-         for (int i = 0; i < numberVariables; i++) {
-            if (graph[i][x] == -1) {
-               if (graph[i][y] == 0) {
-                  for (int j = 0; j < numberVariables; j++) {
-                     if (graph[j][y] > 0) {
-                        graph[j][y] = -1;
-                        numberArrows--;
-                     }
-                  }
+         // i->k->j
+         if ((children[i][w] & parents[j][w]) != 0) {
+            protectedArrow = true;
+         }
+      }
 
-                  i = numberVariables;
-                  aux = 1;
-               } else {
-                  graph[i][y] = -1;
-                  numberArrows--;
+      // Configuration with four nodes: two non adjacent neighbours of i
+      // being parents of j
+      for (int w = 0; w < numberWords && !protectedArrow; w++) {
+         long candidates = neighbours[i][w] & parents[j][w];
+         while (candidates != 0 && !protectedArrow) {
+            int k = (w << 6) + Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+
+            for (int v = 0; v < numberWords && !protectedArrow; v++) {
+               long others = neighbours[i][v] & parents[j][v] & ~adjacents(k, v);
+               if (v == (k >>> 6)) {
+                  others &= ~(1L << k);
+               }
+               if (others != 0) {
+                  protectedArrow = true;
                }
             }
          }
+      }
 
-         // Checks if aux == 0
-         if (aux == 0) {
-            for (int i = 0; i < numberVariables; i++) {
-               if (graph[i][y] != 0 && i != x && graph[i][x] == 0) {
-                  aux = 1;
-                  i = numberVariables;
-               }
-            }
+      // Return the result
+      return protectedArrow;
+   }
 
-            if (aux == 1) {
-               for (int i = 0; i < numberVariables; i++) {
-                  if (graph[i][y] > 0) {
-                     graph[i][y] = -1;
-                     numberArrows--;
-                  }
-               }
-            } else {
-               for (int i = 0; i < numberVariables; i++) {
-                  if (graph[i][y] > 0) {
-                     graph[i][y] = -2;
-                     numberArrows--;
-                  }
-               }
+   /**
+    * Checks if the undirected component (considering links alone) where a
+    * node belongs to is chordal: its nodes can be removed one by one, every
+    * time removing a node whose remaining neighbours are complete. This is
+    * the check performed by cpdagToDag on the graph without arcs, restricted
+    * to a single component
+    *
+    * @param node
+    * @return
+    */
+   private boolean isChordalComponent(int node) {
+      GraphWorkspace space = getWorkspace();
+      long alive[] = space.alive;
+      int stack[] = space.stack;
+      int top = 0;
+
+      // Gets the component with a search over the neighbours
+      space.clear(alive);
+      include(alive, node);
+      stack[top++] = node;
+      int toProcess = 1;
+      while (top > 0) {
+         int current = stack[--top];
+         for (int w = 0; w < numberWords; w++) {
+            long word = neighbours[current][w] & ~alive[w];
+            alive[w] |= word;
+            while (word != 0) {
+               stack[top++] = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               toProcess++;
             }
          }
       }
 
-      // Final stage
+      // Removes the nodes whose neighbourhood is complete
+      return eliminateNodes(alive, toProcess, false, null);
+   }
+
+   /**
+    * Gets a word of the set of nodes adjacent to a node
+    *
+    * @param node
+    * @param w index of the word
+    * @return
+    */
+   private long adjacents(int node, int w) {
+      return parents[node][w] | children[node][w] | neighbours[node][w];
+   }
+
+   /**
+    * Method for converting the cpdag represented by the object into a dag. The
+    * method returns a new graph changing the value of the pdag data member
+    * according to the check (see EliminationChecker for the comparison with
+    * the original method)
+    *
+    * @return a new graph
+    */
+   Graph cpdagToDag() {
+      Graph dag;
+
+      // Bitset for storing the nodes not processed yet
+      long alive[] = new long[numberWords];
       for (int i = 0; i < numberVariables; i++) {
-         for (int j = 0; j < numberVariables; j++) {
-            if (graph[i][j] == -1) {
-               graph[i][j] = 1;
-            } else {
-               if (graph[i][j] == -2) {
-                  graph[i][j] = 2;
-                  graph[j][i] = 2;
+         include(alive, i);
+      }
+
+      // Gets memory space for dag data member
+      dag = new Graph(numberVariables);
+
+      // Process the nodes one by one
+      dag.pDag = eliminateNodes(alive, numberVariables, true, dag);
+
+      // return dag
+      return dag;
+   }
+
+   /**
+    * Removes one by one the nodes in alive that are sinks and form a
+    * complete component with its neighbours and parents, until all of
+    * them are removed or no more nodes can be removed. Auxiliary method
+    * for cpdagToDag and the checks.
+    * The nodes are examined in passes of increasing index, as the
+    * original method did, but a node is examined again only if some
+    * adjacent node was removed since it was examined: otherwise its
+    * sets did not change and it can not be removed either
+    *
+    * @param alive bitset with the nodes to process (modified)
+    * @param toProcess number of nodes in alive
+    * @param withArcs if false, the arcs of the graph are ignored
+    * @param dag if not null, gets the links directed towards every
+    * removed node
+    * @return true if all the nodes were removed
+    */
+   private boolean eliminateNodes(long alive[], int toProcess, boolean withArcs, Graph dag) {
+      long pending[] = getWorkspace().pending;
+      boolean more = true;
+
+      // At the beginning all the nodes must be examined
+      for (int w = 0; w < numberWords; w++) {
+         pending[w] = alive[w];
+      }
+
+      while (toProcess > 0 && more) {
+         // Makes a pass over the pending nodes, in increasing order
+         for (int w = 0; w < numberWords; w++) {
+            long passed = 0;
+            long word;
+            while ((word = pending[w] & ~passed) != 0) {
+               long bit = word & -word;
+               int i = (w << 6) + Long.numberOfTrailingZeros(word);
+               passed |= bit | (bit - 1);
+               pending[w] &= ~bit;
+
+               // The node must be a sink and must form a complete component
+               // with its neighbours and parents
+               if ((!withArcs || isSink(i, alive)) && isComplete(i, alive, withArcs)) {
+                  // This variable is marked as processed
+                  toProcess--;
+                  exclude(alive, i);
+
+                  // Its adjacent nodes must be examined again, and the
+                  // links get directed towards it
+                  for (int v = 0; v < numberWords; v++) {
+                     if (withArcs) {
+                        pending[v] |= adjacents(i, v) & alive[v];
+                     } else {
+                        pending[v] |= neighbours[i][v] & alive[v];
+                     }
+
+                     if (dag != null) {
+                        long others = (parents[i][v] | neighbours[i][v]) & alive[v];
+                        while (others != 0) {
+                           dag.setArc((v << 6) + Long.numberOfTrailingZeros(others), i);
+                           others &= others - 1;
+                        }
+                     }
+                  }
                }
             }
          }
+
+         // Checks if there are nodes to examine
+         more = false;
+         for (int w = 0; w < numberWords && !more; w++) {
+            more = (pending[w] != 0);
+         }
       }
+
+      // Return the result
+      return toProcess == 0;
    }
 
    /**
@@ -854,20 +1318,34 @@ public class Graph implements Serializable{
     * Auxiliary method for cpdag2Dag
     *
     * @param node node to consider
-    * @param processed list of processed nodes
+    * @param alive bitset with the non processed nodes
+    * @param withArcs if false, the arcs of the graph are ignored
     * @return
     */
-   private boolean isComplete(int node, int[] processed) {
+   private boolean isComplete(int node, long[] alive, boolean withArcs) {
       boolean result = true;
 
-      // Considers neighbours and parents of node
-      for (int i = 0; i < numberVariables && result; i++) {
-         // Only for non processed nodes and neighbours of node
-         if (processed[i] == 0 && graph[i][node] == UNDIRECTED) {
-            // Considers the parents
-            for (int j = 0; j < numberVariables && result; j++) {
-               if (j != i && processed[j] == 0 && graph[j][node] != NONE
-                       && graph[i][j] == NONE && graph[j][i] == NONE) {
+      // Considers neighbours of node: every non processed neighbour must
+      // be adjacent to the rest of non processed parents and neighbours
+      for (int w = 0; w < numberWords && result; w++) {
+         long word = neighbours[node][w] & alive[w];
+         while (word != 0 && result) {
+            int i = (w << 6) + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+
+            // Considers the parents and neighbours of node
+            for (int v = 0; v < numberWords && result; v++) {
+               long missing;
+               if (withArcs) {
+                  missing = (parents[node][v] | neighbours[node][v]) & alive[v]
+                          & ~(parents[i][v] | children[i][v] | neighbours[i][v]);
+               } else {
+                  missing = neighbours[node][v] & alive[v] & ~neighbours[i][v];
+               }
+               if (v == (i >>> 6)) {
+                  missing &= ~(1L << i);
+               }
+               if (missing != 0) {
                   result = false;
                }
             }
@@ -883,16 +1361,15 @@ public class Graph implements Serializable{
     * method for cpdag2Dag method
     *
     * @param node node to check
-    * @param processed list of processed nodes
+    * @param alive bitset with the non processed nodes
     * @return
     */
-   private boolean isSink(int node, int processed[]) {
+   private boolean isSink(int node, long alive[]) {
       boolean result = true;
 
-      // Considers the rest of nodes
-      for (int i = 0; i < numberVariables && result; i++) {
-         // Only considers non processed nodes
-         if (processed[i] == 0 && graph[node][i] == DIRECTED) {
+      // Considers the rest of nodes: only non processed children
+      for (int w = 0; w < numberWords && result; w++) {
+         if ((children[node][w] & alive[w]) != 0) {
             // Node is not a sink
             result = false;
          }
@@ -903,69 +1380,496 @@ public class Graph implements Serializable{
    }
 
    /**
-    * Method for ordering the arrows generating a new graph
+    * Gets the workspace for the checks, getting space for a new one if
+    * no workspace was set
+    *
+    * @return
+    */
+   private GraphWorkspace getWorkspace() {
+      if (workspace == null || workspace.getNumberVariables() != numberVariables) {
+         workspace = new GraphWorkspace(numberVariables);
+      }
+      return workspace;
+   }
+
+   /**
+    * Sets an arc from x to y, updating the bitsets as well
+    *
+    * @param x
+    * @param y
+    */
+   private void setArc(int x, int y) {
+      if (journaling) {
+         record(SET_ARC, x, y);
+      }
+      if (component != null && graph[y][x] == NONE) {
+         joinComponents(x, y);
+      }
+      graph[x][y] = DIRECTED;
+      include(children[x], y);
+      include(parents[y], x);
+      numberArcs++;
+      stateHash ^= cellKey(x, y, DIRECTED);
+
+      // Keeps the topological order
+      if (orderValid && position[x] > position[y]) {
+         if (cycleTail != -1) {
+            // Two arcs out of the order: it will be computed again
+            orderValid = false;
+         } else if (!reorder(x, y)) {
+            cycleTail = x;
+            cycleHead = y;
+         }
+      }
+   }
+
+   /**
+    * Removes the arc from x to y, updating the bitsets as well
+    *
+    * @param x
+    * @param y
+    */
+   private void clearArc(int x, int y) {
+      if (journaling) {
+         record(CLEAR_ARC, x, y);
+      }
+      graph[x][y] = NONE;
+      exclude(children[x], y);
+      exclude(parents[y], x);
+      numberArcs--;
+      stateHash ^= cellKey(x, y, DIRECTED);
+      if (component != null && graph[y][x] == NONE) {
+         splitComponents(x, y);
+      }
+
+      // The order is kept, but the arc out of the order may fit now
+      if (orderValid && cycleTail != -1) {
+         if (cycleTail == x && cycleHead == y) {
+            cycleTail = -1;
+         } else if (reorder(cycleTail, cycleHead)) {
+            cycleTail = -1;
+         }
+      }
+   }
+
+   /**
+    * Sets an undirected link between x and y, updating the bitsets as well
     *
-    * @param reference graph to consider
+    * @param x
+    * @param y
     */
-   private int orderArrows(Graph reference) {
-      int numberArrows = 0;
-      int aux;
+   private void setLink(int x, int y) {
+      if (journaling) {
+         record(SET_LINK, x, y);
+      }
+      if (component != null && graph[x][y] == NONE && graph[y][x] == NONE) {
+         joinComponents(x, y);
+      }
+      graph[x][y] = UNDIRECTED;
+      graph[y][x] = UNDIRECTED;
+      include(neighbours[x], y);
+      include(neighbours[y], x);
+      numberLinks++;
+      stateHash ^= cellKey(x, y, UNDIRECTED) ^ cellKey(y, x, UNDIRECTED);
+   }
 
-      // Consider all the components in dag
-      for (int k = 0; k < numberComponents; k++) {
+   /**
+    * Removes the undirected link between x and y, updating the bitsets
+    * as well
+    *
+    * @param x
+    * @param y
+    */
+   private void clearLink(int x, int y) {
+      if (journaling) {
+         record(CLEAR_LINK, x, y);
+      }
+      graph[x][y] = NONE;
+      graph[y][x] = NONE;
+      exclude(neighbours[x], y);
+      exclude(neighbours[y], x);
+      numberLinks--;
+      stateHash ^= cellKey(x, y, UNDIRECTED) ^ cellKey(y, x, UNDIRECTED);
+      if (component != null) {
+         splitComponents(x, y);
+      }
+   }
+
+   /**
+    * Stores a change on the cells in the journal
+    *
+    * @param kind
+    * @param x
+    * @param y
+    */
+   private void record(int kind, int x, int y) {
+      if (journalSize == journal.length) {
+         journal = Arrays.copyOf(journal, 2 * journalSize);
+      }
+      journal[journalSize++] = ((long) y << 32) | ((long) x << 2) | kind;
+   }
+
+   /**
+    * Updates the components of the skeleton when x and y, non adjacent
+    * until now, are going to be adjacent: the nodes of the component of
+    * y get the label of the component of x
+    *
+    * @param x
+    * @param y
+    */
+   private void joinComponents(int x, int y) {
+      int previous = component[y];
+      int label = component[x];
+
+      if (previous != label) {
          for (int i = 0; i < numberVariables; i++) {
-            if (reference.order[i] == k) {
-               aux = 0;
-
-               // Loop while aux > -1
-               while (aux > -1) {
-                  aux = -1;
-
-                  for (int j = 0; j < numberVariables; j++) {
-                     if (reference.graph[j][i] == DIRECTED && graph[j][i] == NONE) {
-                        if (aux == -1) {
-                           aux = j;
-                        } else {
-                           if (reference.order[j] > reference.order[aux]) {
-                              aux = j;
-                           }
-                        }
-                     }
-                  }
+            if (component[i] == previous) {
+               component[i] = label;
+            }
+         }
+         numberSkeletonComponents--;
+      }
+   }
+
+   /**
+    * Updates the components of the skeleton once x and y are not adjacent
+    * any more: if y can not be reached from x, the nodes reached from x
+    * form a new component
+    *
+    * @param x
+    * @param y
+    */
+   private void splitComponents(int x, int y) {
+      GraphWorkspace space = getWorkspace();
+      long marked[] = space.visited;
+      int stack[] = space.stack;
+      int top = 0;
+      boolean reached = false;
+
+      // Search from x, stopping as soon as y is reached
+      space.clear(marked);
+      include(marked, x);
+      stack[top++] = x;
+      while (top > 0 && !reached) {
+         int node = stack[--top];
+         for (int w = 0; w < numberWords && !reached; w++) {
+            long word = adjacents(node, w) & ~marked[w];
+            marked[w] |= word;
+            if (w == (y >>> 6) && (word & (1L << y)) != 0) {
+               reached = true;
+            }
+            while (word != 0) {
+               stack[top++] = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+            }
+         }
+      }
+
+      if (!reached) {
+         // The nodes reached from x are labelled with x. If the previous
+         // label belongs to them, the nodes of y are labelled with y
+         int previous = component[x];
+         for (int w = 0; w < numberWords; w++) {
+            long word = marked[w];
+            while (word != 0) {
+               component[(w << 6) + Long.numberOfTrailingZeros(word)] = x;
+               word &= word - 1;
+            }
+         }
+         if (contains(marked, previous)) {
+            labelComponent(y, y);
+         }
+         numberSkeletonComponents++;
+      }
+   }
+
+   /**
+    * Gives a label to all the nodes reached from a node in the skeleton
+    *
+    * @param node
+    * @param label
+    */
+   private void labelComponent(int node, int label) {
+      GraphWorkspace space = getWorkspace();
+      long marked[] = space.visited;
+      int stack[] = space.stack;
+      int top = 0;
+
+      space.clear(marked);
+      include(marked, node);
+      stack[top++] = node;
+      while (top > 0) {
+         int current = stack[--top];
+         component[current] = label;
+         for (int w = 0; w < numberWords; w++) {
+            long word = adjacents(current, w) & ~marked[w];
+            marked[w] |= word;
+            while (word != 0) {
+               stack[top++] = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+            }
+         }
+      }
+   }
 
-                  // Increment numberArrows if needed
-                  if (aux > -1) {
-                     numberArrows++;
-                     graph[aux][i] = numberArrows;
+   /**
+    * Repairs the topological order after adding the arc x->y, with x placed
+    * after y (algorithm of Pearce and Kelly). Only the nodes placed between
+    * y and x are considered: the descendants of y and the ancestors of x in
+    * this region are moved, keeping their relative order, so the ancestors
+    * are placed before the descendants
+    *
+    * @param x tail of the arc
+    * @param y head of the arc
+    * @return false if the arc closes a directed cycle (the order is not
+    * changed in this case)
+    */
+   private boolean reorder(int x, int y) {
+      GraphWorkspace space = getWorkspace();
+      long forward[] = space.visited;
+      long backward[] = space.alive;
+      int stack[] = space.stack;
+      int nodes[] = space.counters;
+      int lower = position[y];
+      int upper = position[x];
+      int top = 0;
+      boolean cycle = false;
+
+      // Gets the positions of the descendants of y placed before x
+      space.clear(forward);
+      include(forward, lower);
+      stack[top++] = y;
+      while (top > 0 && !cycle) {
+         int node = stack[--top];
+         for (int w = 0; w < numberWords && !cycle; w++) {
+            long word = children[node][w];
+            while (word != 0) {
+               int child = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               if (child == x) {
+                  cycle = true;
+               } else if (position[child] < upper && !contains(forward, position[child])) {
+                  include(forward, position[child]);
+                  stack[top++] = child;
+               }
+            }
+         }
+      }
+
+      if (!cycle) {
+         // Gets the positions of the ancestors of x placed after y
+         top = 0;
+         space.clear(backward);
+         include(backward, upper);
+         stack[top++] = x;
+         while (top > 0) {
+            int node = stack[--top];
+            for (int w = 0; w < numberWords; w++) {
+               long word = parents[node][w];
+               while (word != 0) {
+                  int parent = (w << 6) + Long.numberOfTrailingZeros(word);
+                  word &= word - 1;
+                  if (position[parent] > lower && !contains(backward, position[parent])) {
+                     include(backward, position[parent]);
+                     stack[top++] = parent;
                   }
                }
             }
          }
+
+         // Lists the ancestors and then the descendants, both of them
+         // in the current order
+         int size = 0;
+         for (int w = (lower >>> 6); w <= (upper >>> 6); w++) {
+            long word = backward[w];
+            while (word != 0) {
+               nodes[size++] = nodeAt[(w << 6) + Long.numberOfTrailingZeros(word)];
+               word &= word - 1;
+            }
+         }
+         for (int w = (lower >>> 6); w <= (upper >>> 6); w++) {
+            long word = forward[w];
+            while (word != 0) {
+               nodes[size++] = nodeAt[(w << 6) + Long.numberOfTrailingZeros(word)];
+               word &= word - 1;
+            }
+         }
+
+         // Places them in the positions they were using
+         int index = 0;
+         for (int w = (lower >>> 6); w <= (upper >>> 6); w++) {
+            long word = backward[w] | forward[w];
+            while (word != 0) {
+               int place = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               position[nodes[index]] = place;
+               nodeAt[place] = nodes[index];
+               index++;
+            }
+         }
+      }
+
+      // Return the result
+      return !cycle;
+   }
+
+   /**
+    * Computes the topological order from scratch, visiting a node once all
+    * its parents were visited. If there is a directed cycle the order is
+    * left as not valid
+    */
+   private void sortTopologically() {
+      GraphWorkspace space = getWorkspace();
+      int pending[] = space.counters;
+      int stack[] = space.stack;
+      int top = 0;
+      int visited = 0;
+
+      // The nodes without parents are ready
+      for (int i = 0; i < numberVariables; i++) {
+         pending[i] = 0;
+         for (int w = 0; w < numberWords; w++) {
+            pending[i] += Long.bitCount(parents[i][w]);
+         }
+         if (pending[i] == 0) {
+            stack[top++] = i;
+         }
+      }
+
+      // Gives positions in the order the nodes are visited
+      while (top > 0) {
+         int node = stack[--top];
+         position[node] = visited;
+         nodeAt[visited] = node;
+         visited++;
+
+         for (int w = 0; w < numberWords; w++) {
+            long word = children[node][w];
+            while (word != 0) {
+               int child = (w << 6) + Long.numberOfTrailingZeros(word);
+               word &= word - 1;
+               if (--pending[child] == 0) {
+                  stack[top++] = child;
+               }
+            }
+         }
       }
 
-      // Return the number of arrows
-      return numberArrows;
+      // The order is valid if all the nodes were visited
+      orderValid = (visited == numberVariables);
+      cycleTail = -1;
    }
 
    /**
-    * Removes direct arcs
-    *
-    * @return graph without directed arcs
+    * Gets space for the bitsets and fills them with the content of
+    * graph data member, counting the arcs and links as well. The
+    * topological order will be computed when needed if there are arcs
     */
-   private Graph removesArcs() {
-      Graph newGraph = new Graph(numberVariables);
+   private void buildBitsets() {
+      numberWords = (numberVariables + 63) >>> 6;
+      parents = new long[numberVariables][numberWords];
+      children = new long[numberVariables][numberWords];
+      neighbours = new long[numberVariables][numberWords];
+      numberArcs = 0;
+      numberLinks = 0;
+      stateHash = 0;
 
-      // Removes directed edges in graph
+      // Considers every cell
       for (int i = 0; i < numberVariables; i++) {
          for (int j = 0; j < numberVariables; j++) {
-            if (graph[i][j] == DIRECTED) {
-               newGraph.graph[i][j] = NONE;
-            } else {
-               newGraph.graph[i][j] = graph[i][j];
+            switch (graph[i][j]) {
+               case DIRECTED:
+                  include(children[i], j);
+                  include(parents[j], i);
+                  numberArcs++;
+                  stateHash ^= cellKey(i, j, DIRECTED);
+                  break;
+               case UNDIRECTED:
+                  include(neighbours[i], j);
+                  if (j > i) {
+                     numberLinks++;
+                  }
+                  stateHash ^= cellKey(i, j, UNDIRECTED);
+                  break;
+            }
+         }
+      }
+
+      // Gets space for the order: any order is valid without arcs
+      position = new int[numberVariables];
+      nodeAt = new int[numberVariables];
+      orderValid = true;
+      cycleTail = -1;
+      for (int i = 0; i < numberVariables; i++) {
+         position[i] = i;
+         nodeAt[i] = i;
+         for (int w = 0; w < numberWords; w++) {
+            if (children[i][w] != 0) {
+               orderValid = false;
             }
          }
       }
+   }
+
+   /**
+    * Method for reading serialized graphs: the bitsets are not stored and
+    * must be built again
+    *
+    * @param stream
+    * @throws IOException
+    * @throws ClassNotFoundException
+    */
+   private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+      stream.defaultReadObject();
+      buildBitsets();
+   }
+
+   /**
+    * Gets the key of a cell with a certain value for the hash of the
+    * graph. The keys are obtained mixing the bits of the cell coordinates
+    * and value (finalizer of SplitMix64), so they do not need to be stored
+    * and are the same for every graph
+    *
+    * @param i
+    * @param j
+    * @param value
+    * @return
+    */
+   static long cellKey(int i, int j, int value) {
+      long key = (((long) i << 34) ^ ((long) j << 2) ^ value) + 0x9E3779B97F4A7C15L;
+      key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+      key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+      return key ^ (key >>> 31);
+   }
+
+   /**
+    * Checks if a node belongs to a bitset
+    *
+    * @param set
+    * @param node
+    * @return
+    */
+   static boolean contains(long set[], int node) {
+      return (set[node >>> 6] & (1L << node)) != 0;
+   }
 
-      return newGraph;
+   /**
+    * Adds a node to a bitset
+    *
+    * @param set
+    * @param node
+    */
+   static void include(long set[], int node) {
+      set[node >>> 6] |= (1L << node);
+   }
+
+   /**
+    * Removes a node from a bitset
+    *
+    * @param set
+    * @param node
+    */
+   static void exclude(long set[], int node) {
+      set[node >>> 6] &= ~(1L << node);
    }
 }
@@ -0,0 +1,126 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+/**
+ * Interface with the operations required for moving along the Markov
+ * chain over the graphs, so that the chain can work with different
+ * representations of the graphs
+ * @author mgomez, jmpeña
+ */
+public interface GraphEngine {
+
+   /**
+    * Method to check if an arc can be added in a certain position
+    */
+   boolean isAddArcPossible(int x, int y);
+
+   /**
+    * Adds and arc between two nodes
+    */
+   void addArc(int x, int y);
+
+   /**
+    * Method to check if an arc can be deleted
+    */
+   boolean isDeleteArcPossible(int x, int y);
+
+   /**
+    * Deletes an arc between two nodes
+    */
+   void deleteArc(int x, int y);
+
+   /**
+    * Method to check if a link can be added in a certain position
+    */
+   boolean isAddLinkPossible(int x, int y);
+
+   /**
+    * Adds an undirected link between two nodes
+    */
+   void addLink(int x, int y);
+
+   /**
+    * Method to check if a link can be deleted
+    */
+   boolean isDeleteLinkPossible(int x, int y);
+
+   /**
+    * Removes an undirected link between two nodes
+    */
+   void deleteLink(int x, int y);
+
+   /**
+    * Method to check if a v-structure can be added
+    */
+   boolean isAddVStructurePossible(int x, int y, int z);
+
+   /**
+    * Adds a v-structure having z as head to head node
+    */
+   void addVStructure(int x, int y, int z);
+
+   /**
+    * Method to check if a v-structure can be deleted
+    */
+   boolean isDeleteVStructurePossible(int x, int y, int z);
+
+   /**
+    * Deletes a v-structure having z as head to head node
+    */
+   void deleteVStructure(int x, int y, int z);
+
+   /**
+    * Undo the last operation
+    */
+   void undo();
+
+   /**
+    * Checks the graph
+    */
+   boolean check();
+
+   /**
+    * Checks the graph after the last operation, assuming the graph
+    * before it passed the check
+    */
+   boolean checkLastOperation();
+
+   /**
+    * Tests if the graph contains a single connected component
+    */
+   boolean isConnected();
+
+   /**
+    * Tests if the graph do not contains undirected links
+    */
+   boolean doNotContainsUndirectedLinks();
+
+   /**
+    * Gets a hash of the graph, equal for graphs with the same arcs and
+    * links
+    */
+   long getStateHash();
+
+   /**
+    * Gets the number of variables
+    */
+   int getNumberVariables();
+
+   /**
+    * Gets the number of arcs
+    */
+   int getNumberArcs();
+
+   /**
+    * Gets the number of links
+    */
+   int getNumberLinks();
+
+   /**
+    * Gets the graph as an object of Graph class
+    */
+   Graph toGraph();
+}
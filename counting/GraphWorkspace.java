@@ -0,0 +1,91 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+/**
+ * Class for storing the auxiliary structures required for checking the
+ * graphs, so that they can be reused between checks instead of getting
+ * new space every time. A workspace must not be shared between threads
+ * @author mgomez, jmpeña
+ */
+public class GraphWorkspace {
+   /**
+    * Data member to store the number of variables
+    */
+   private final int numberVariables;
+   /**
+    * Data member to store the number of words of the bitsets
+    */
+   private final int numberWords;
+   /**
+    * Bitsets for the nodes still alive in the elimination of nodes and
+    * for the nodes visited in the searches
+    */
+   final long alive[];
+   final long visited[];
+   /**
+    * Bitset for the nodes pending of examination in the elimination
+    */
+   final long pending[];
+   /**
+    * Stack of nodes for the searches
+    */
+   final int stack[];
+   /**
+    * Counters for every node (pending parents when computing the order)
+    */
+   final int counters[];
+
+   /**
+    * Class constructor
+    *
+    * @param numVariables
+    */
+   public GraphWorkspace(int numVariables) {
+      this.numberVariables = numVariables;
+      this.numberWords = (numVariables + 63) >>> 6;
+
+      // Gets space for the structures
+      alive = new long[numberWords];
+      visited = new long[numberWords];
+      pending = new long[numberWords];
+      stack = new int[numVariables];
+      counters = new int[numVariables];
+   }
+
+   /**
+    * Gets the number of variables
+    *
+    * @return
+    */
+   public int getNumberVariables() {
+      return numberVariables;
+   }
+
+   /**
+    * Empties a bitset of the workspace
+    *
+    * @param set
+    */
+   void clear(long set[]) {
+      for (int w = 0; w < numberWords; w++) {
+         set[w] = 0;
+      }
+   }
+
+   /**
+    * Fills a bitset of the workspace with all the variables
+    *
+    * @param set
+    */
+   void fill(long set[]) {
+      for (int w = 0; w < numberWords; w++) {
+         set[w] = -1L;
+      }
+      if ((numberVariables & 63) != 0) {
+         set[numberWords - 1] = (1L << numberVariables) - 1;
+      }
+   }
+}
@@ -0,0 +1,208 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.util.Random;
+
+/**
+ * Class for checking that the check of the last operation, which examines
+ * only the part of the graph around it, gives the same result as the full
+ * check of Graph. Random chains make the same proposals on a Graph, on a
+ * SparseGraph and, with few variables, on a PackedGraph: before keeping
+ * or undoing every proposal, the checkLastOperation of every engine is
+ * compared with the check of the Graph. The engines must agree on the
+ * possible operations as well, and undoing a rejected proposal twice must
+ * give back the numbers of arcs and links and the hash of the graph before
+ * it. The exit status is 1 if some result differs
+ * @author mgomez, jmpeña
+ */
+public class LastOperationChecker {
+   /**
+    * Numbers of variables of the chains (the packed graph is used up to
+    * PackedGraph.MAX_VARIABLES) and steps of every chain
+    */
+   private static final int CHAIN_VARIABLES[] = {3, 4, 5, 6, 7, 8, 12, 20, 70};
+   private static final int CHAIN_STEPS = 50000;
+   /**
+    * Data member to store the number of comparisons, of valid proposals
+    * and of differences
+    */
+   private static int comparisons = 0;
+   private static int validProposals = 0;
+   private static int differences = 0;
+
+   /**
+    * Main method
+    *
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      Random generator = new Random(0);
+
+      // Chains: the engines make the same proposals
+      for (int n : CHAIN_VARIABLES) {
+         int initialComparisons = comparisons;
+         int initialValid = validProposals;
+         int initialDifferences = differences;
+         GraphEngine engines[];
+         if (n <= PackedGraph.MAX_VARIABLES) {
+            engines = new GraphEngine[]{new Graph(n), new SparseGraph(n), new PackedGraph(n)};
+         } else {
+            engines = new GraphEngine[]{new Graph(n), new SparseGraph(n)};
+         }
+         int arcs[] = new int[engines.length];
+         int links[] = new int[engines.length];
+         long hashes[] = new long[engines.length];
+
+         for (int step = 0; step < CHAIN_STEPS; step++) {
+            int operation = generator.nextInt(6);
+            int x = generator.nextInt(n);
+            int y = generator.nextInt(n);
+            int z = generator.nextInt(n);
+
+            // Stores the state of the engines, restored by undo
+            for (int i = 0; i < engines.length; i++) {
+               arcs[i] = engines[i].getNumberArcs();
+               links[i] = engines[i].getNumberLinks();
+               hashes[i] = engines[i].getStateHash();
+            }
+
+            // Makes the proposal on every engine
+            boolean changed = perform(engines[0], operation, x, y, z);
+            for (int i = 1; i < engines.length; i++) {
+               if (perform(engines[i], operation, x, y, z) != changed) {
+                  report("engine " + i + " differs on the possible operation " + operation, engines[0]);
+               }
+            }
+
+            // Compares the checks and keeps the proposal or undoes it
+            // twice: the second undo must not change the state
+            if (changed) {
+               boolean valid = compare(engines);
+               for (int i = 0; i < engines.length && !valid; i++) {
+                  engines[i].undo();
+                  engines[i].undo();
+                  if (engines[i].getNumberArcs() != arcs[i] || engines[i].getNumberLinks() != links[i]
+                          || engines[i].getStateHash() != hashes[i]) {
+                     report("engine " + i + " changes its state after undo", engines[0]);
+                  }
+               }
+            }
+         }
+         System.out.println("Chain with " + n + " variables and " + engines.length + " engines: "
+                 + (comparisons - initialComparisons) + " compared ("
+                 + (validProposals - initialValid) + " valid), "
+                 + (differences - initialDifferences) + " different");
+      }
+
+      // Shows the result
+      System.out.println(differences == 0 ? "OK: same results" : "FAILED: " + differences + " different results");
+      if (differences != 0) {
+         System.exit(1);
+      }
+   }
+
+   /**
+    * Makes an operation on the graph, if possible (also used by
+    * ProtectedArrowsChecker)
+    *
+    * @param graph
+    * @param operation number of the operation: add link, delete link,
+    * add arc, delete arc, add v-structure and delete v-structure
+    * @param x
+    * @param y
+    * @param z
+    * @return true if the graph was changed
+    */
+   static boolean perform(GraphEngine graph, int operation, int x, int y, int z) {
+      boolean changed = false;
+
+      switch (operation) {
+         case 0:
+            if (graph.isAddLinkPossible(x, y)) {
+               graph.addLink(x, y);
+               changed = true;
+            }
+            break;
+
+         case 1:
+            if (graph.isDeleteLinkPossible(x, y)) {
+               graph.deleteLink(x, y);
+               changed = true;
+            }
+            break;
+
+         case 2:
+            if (graph.isAddArcPossible(x, y)) {
+               graph.addArc(x, y);
+               changed = true;
+            }
+            break;
+
+         case 3:
+            if (graph.isDeleteArcPossible(x, y)) {
+               graph.deleteArc(x, y);
+               changed = true;
+            }
+            break;
+
+         case 4:
+            if (graph.isAddVStructurePossible(x, y, z)) {
+               graph.addVStructure(x, y, z);
+               changed = true;
+            }
+            break;
+
+         case 5:
+            if (graph.isDeleteVStructurePossible(x, y, z)) {
+               graph.deleteVStructure(x, y, z);
+               changed = true;
+            }
+            break;
+      }
+
+      // Return if there was a change
+      return changed;
+   }
+
+   /**
+    * Compares the check of the last operation of every engine with the
+    * full check of the Graph (the first engine)
+    *
+    * @param engines
+    * @return result of the full check
+    */
+   private static boolean compare(GraphEngine engines[]) {
+      boolean expected = engines[0].check();
+
+      comparisons++;
+      if (expected) {
+         validProposals++;
+      }
+      for (int i = 0; i < engines.length; i++) {
+         boolean result = engines[i].checkLastOperation();
+         if (result != expected) {
+            report("engine " + i + ": expected " + expected + ", got " + result, engines[0]);
+         }
+      }
+
+      // Return the result of the full check
+      return expected;
+   }
+
+   /**
+    * Counts a difference, showing the first one
+    *
+    * @param message
+    * @param graph
+    */
+   private static void report(String message, GraphEngine graph) {
+      differences++;
+      if (differences == 1) {
+         System.out.println("First difference: " + message);
+         graph.toGraph().print();
+      }
+   }
+}
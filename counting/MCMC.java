@@ -7,6 +7,8 @@ package counting;
 import java.io.*;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
 import java.util.concurrent.*;
 
 /**
@@ -15,6 +17,14 @@ import java.util.concurrent.*;
  * @author mgomez, jmpeña
  */
 public class MCMC {
+   /**
+    * Default algorithm for the random number generators of the samples
+    */
+   static final String DEFAULT_GENERATOR = "SplittableRandom";
+   /**
+    * Seconds between progress information with long chains
+    */
+   private static final int PROGRESS_SECONDS = 10;
    /**
     * Data member to store the number of variables
     */
@@ -37,26 +47,71 @@ public class MCMC {
    private int firstId;
    
    /**
-    * Data member to accumulate the results
+    * Data member to accumulate the results of the samples
+    */
+   private final SimulationStats statistics;
+   /**
+    * Data member to store the number of entries of the cache of checks
+    * of every thread (0 if no cache is used)
+    */
+   private int cacheSize;
+   /**
+    * Data member to store if the graphs with few variables are stored
+    * in packed form (see PackedGraph)
+    */
+   private boolean packedGraphs;
+   /**
+    * Data member to store if the graphs are stored as lists of adjacent
+    * nodes (see SparseGraph), for problems with many variables
+    */
+   private boolean sparseGraphs;
+   /**
+    * Data member to store if the chains count the steps where the graph
+    * is connected (the dense graphs keep their components updated for it)
+    */
+   private boolean connectedSteps;
+   /**
+    * Data member to store the number of threads generating samples
     */
-   private double iterEqual;
-   private double iterAddLink;
-   private double iterDeleteLink;
-   private double iterAddArc;
-   private double iterDeleteArc;
-   private double iterAddVStructure;
-   private double iterDeleteVStructure;
-   private int cumDirected;
-   private int cumConnected;
-   private int cumDirectedConnected;
+   private int numberThreads;
+   /**
+    * Data members for generating the samples with long chains: number of
+    * steps before the first sample of every chain (burn-in) and number of
+    * steps between samples (0 for generating every sample with its own
+    * chain)
+    */
+   private int burnIn;
+   private int thinning;
+   /**
+    * Data member to store if the chains jump directly to valid neighbour
+    * graphs (n-fold way) instead of making the steps one by one
+    */
+   private boolean nFold;
+   /**
+    * Data member to store if the chains skip the steps proposing no change
+    */
+   private boolean skipAhead;
+   /**
+    * Data member to store the table with the results of the checks (null
+    * if the graphs are checked along the chains)
+    */
+   private CheckTable checkTable;
    /**
     * Random number generator
     */
    private Random generator;
+   /**
+    * Data members to store the seed of the simulation and the algorithm
+    * of the random number generators of the samples. The generator of
+    * every sample is seeded with the seed of the simulation and the id of
+    * the sample, so any sample can be generated again
+    */
+   private long seed;
+   private RandomGeneratorFactory<RandomGenerator> generatorFactory;
    /**
     * Counter for controlling info output
     */
-   private static int counter = 0;
+   private int counter;
    
    /**
     * Class constructor
@@ -75,22 +130,26 @@ public class MCMC {
       this.firstId=firstId;
 
       // Gives initial values to the data members
-      iterEqual = 0;
-      iterAddLink = 0;
-      iterDeleteLink = 0;
-      iterAddArc = 0;
-      iterDeleteArc = 0;
-      iterAddVStructure = 0;
-      iterDeleteVStructure = 0;
-      cumDirected = 0;
-      cumConnected = 0;
-      cumDirectedConnected = 0;
+      statistics = new SimulationStats();
+      counter = 0;
+      cacheSize = 0;
+      packedGraphs = false;
+      sparseGraphs = false;
+      connectedSteps = true;
+      numberThreads = Runtime.getRuntime().availableProcessors();
+      burnIn = numIterations;
+      thinning = 0;
+      nFold = false;
+      skipAhead = false;
+      checkTable = null;
 
       // Initialize graph to null
       graph = null;
       
       // Creates the random number generator
       generator=new Random();
+      seed=generator.nextLong();
+      generatorFactory=RandomGeneratorFactory.of(DEFAULT_GENERATOR);
    }
 
    /**
@@ -123,37 +182,95 @@ public class MCMC {
          System.exit(-1);
       }
       
-      // Creates the executor service
-      ExecutorService executor=Executors.newCachedThreadPool();
-
-      // Take samples to consider
-      for (int i = 0; i < numberSamples; i++) {
-         // Takes a sample throug the corresponding thread
-         executor.execute(new SampleGenerator(numberVariables, numberOperations,
-                                              numberSamples, i, this));
-
-         // Stores the number of arcs and links for every sample
-         //pFileArcsLinks.printf("%s", getNumberArcsLinks());
-
-         // To show the progress of the simulation, orint information
-         // about the progress
-         if (i % 100 == 0) {
-            info = showProgress(i+firstId, System.currentTimeMillis() - clock_init);
-            System.out.println(info);
-
-            // Open the file
-            //pFileGlobal.printf("%s", info);
+      // Creates the executor service with a fixed number of threads. The
+      // samples are submitted as the threads get free: at most two samples
+      // per thread are waiting at any time
+      ExecutorService executor=Executors.newFixedThreadPool(numberThreads);
+      final Semaphore slots=new Semaphore(2*numberThreads);
+
+      if (thinning > 0) {
+         // Every thread runs a long chain generating a part of the samples
+         int first = 0;
+         for (int c = 0; c < numberThreads; c++) {
+            int count = numberSamples / numberThreads + (c < numberSamples % numberThreads ? 1 : 0);
+            if (count > 0) {
+               executor.execute(new SampleGenerator(numberVariables, numberOperations,
+                       numberSamples, first, count, burnIn, thinning, this));
+            }
+            first += count;
+         }
+
+         // Prints the header of the progress information
+         System.out.println(showProgress(firstId, 0));
+      } else {
+         // Take samples to consider
+         for (int i = 0; i < numberSamples; i++) {
+            // Takes a sample throug the corresponding thread
+            slots.acquireUninterruptibly();
+            final SampleGenerator sampleGenerator=new SampleGenerator(numberVariables,
+                    numberOperations, numberSamples, i, this);
+            executor.execute(new Runnable() {
+               @Override
+               public void run() {
+                  try {
+                     sampleGenerator.run();
+                  } finally {
+                     slots.release();
+                  }
+               }
+            });
+
+            // Stores the number of arcs and links for every sample
+            //pFileArcsLinks.printf("%s", getNumberArcsLinks());
+
+            // To show the progress of the simulation, orint information
+            // about the progress
+            if (i % 100 == 0) {
+               info = showProgress(i+firstId, System.currentTimeMillis() - clock_init);
+               System.out.println(info);
+
+               // Open the file
+               //pFileGlobal.printf("%s", info);
+            }
          }
+      
       }
       
       // Stops the executor
       executor.shutdown();
       
-      // Waits until the end
-      while(!executor.isTerminated());
+      // Waits until the end (with long chains, showing the progress from
+      // time to time)
+      boolean finished=false;
+      while(!finished){
+         try {
+            if (thinning > 0) {
+               finished=executor.awaitTermination(PROGRESS_SECONDS, TimeUnit.SECONDS);
+               long samples=statistics.snapshot().getSamples();
+               if (!finished && samples > 0) {
+                  System.out.println(showProgress((int) samples + firstId, System.currentTimeMillis() - clock_init));
+               }
+            } else {
+               finished=executor.awaitTermination(1, TimeUnit.DAYS);
+            }
+         } catch (InterruptedException e) {
+            System.out.println("Simulation interrupted");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+         }
+      }
       
       // Shows everything has finished
+      if (thinning > 0) {
+         System.out.println(showProgress(numberSamples + firstId, System.currentTimeMillis() - clock_init));
+      }
       System.out.println("Simulation just finished");
+      if (cacheSize > 0) {
+         SimulationStats.Snapshot snapshot = statistics.snapshot();
+         System.out.println("Check cache hits: " + snapshot.getCacheHits()
+                 + "  misses: " + snapshot.getCacheMisses());
+      }
 
       // Close files
       //pFileGlobal.close();
@@ -161,80 +278,204 @@ public class MCMC {
    }
    
    /**
-    * Method for adding the value of iterEqual
-    * @param eq 
+    * Sets the number of steps of every long chain before its first sample
+    * @param steps
     */
-   public synchronized void setIterEqual(double eq){
-      iterEqual+=eq;
+   public void setBurnIn(int steps){
+      burnIn=Math.max(0, steps);
    }
-   
+
    /**
-    * Method for adding the value of addLink
-    * @param addLink 
+    * Sets the number of steps between samples of long chains (0 for
+    * generating every sample with its own chain)
+    * @param steps
     */
-   public synchronized void setIterAddLink(double addLink){
-      iterAddLink+=addLink;
+   public void setThinning(int steps){
+      thinning=Math.max(0, steps);
    }
-   
+
    /**
-    * Method for adding the value of deleteLink
-    * @param deleteLink
+    * Sets if the chains jump directly to valid neighbour graphs
+    * @param nFold
     */
-   public synchronized void setIterDeleteLink(double deleteLink){
-      iterDeleteLink+=deleteLink;
+   public void setNFold(boolean nFold){
+      this.nFold=nFold;
    }
-   
+
    /**
-    * Method for adding the value of addArc
-    * @param addArc
+    * Tests if the chains jump directly to valid neighbour graphs
+    * @return
     */
-   public synchronized void setIterAddArc(double addArc){
-      iterAddArc+=addArc;
+   public boolean useNFold(){
+      return nFold;
    }
-   
+
    /**
-    * Method for adding the value of deleteArc
-    * @param deleteArc
+    * Sets if the chains skip the steps proposing no change
+    * @param skipAhead
     */
-   public synchronized void setIterDeleteArc(double deleteArc){
-      iterDeleteArc+=deleteArc;
+   public void setSkipAhead(boolean skipAhead){
+      this.skipAhead=skipAhead;
    }
-   
+
    /**
-    * Method for adding the value of addVStructure
-    * @param addVStructure
+    * Tests if the chains skip the steps proposing no change
+    * @return
     */
-   public synchronized void setIterAddVStructure(double addVStructure){
-      iterAddVStructure+=addVStructure;
+   public boolean useSkipAhead(){
+      return skipAhead;
    }
-   
+
    /**
-    * Method for adding the value of deleteVStructure
-    * @param deleteVStructure
+    * Sets the seed of the simulation
+    * @param seed
     */
-   public synchronized void setIterDeleteVStructure(double deleteVStructure){
-      iterDeleteVStructure+=deleteVStructure;
+   public void setSeed(long seed){
+      this.seed=seed;
    }
-   
+
+   /**
+    * Gets the seed of the simulation
+    * @return
+    */
+   public long getSeed(){
+      return seed;
+   }
+
+   /**
+    * Sets the algorithm of the random number generators of the samples
+    * (a name known by java.util.random.RandomGeneratorFactory, so Java 17
+    * or later is needed)
+    * @param algorithm
+    */
+   public void setGeneratorAlgorithm(String algorithm){
+      generatorFactory=RandomGeneratorFactory.of(algorithm);
+   }
+
+   /**
+    * Creates the random number generator for a sample, seeded with the
+    * seed of the simulation and the global id of the sample (first id of
+    * the simulation plus the id inside it), so the runs splitting the
+    * samples by first_id get different samples
+    * @param id id of the sample inside the simulation
+    * @return
+    */
+   public RandomGenerator createGenerator(int id){
+      long globalId = (long) firstId + id;
+
+      // The bits are mixed (finalizer of SplitMix64): generators like
+      // SplittableRandom advance their seed adding the same constant, so
+      // without mixing the samples would get shifted copies of a stream
+      long sampleSeed = seed + (globalId + 1) * 0x9E3779B97F4A7C15L;
+      sampleSeed = (sampleSeed ^ (sampleSeed >>> 30)) * 0xBF58476D1CE4E5B9L;
+      sampleSeed = (sampleSeed ^ (sampleSeed >>> 27)) * 0x94D049BB133111EBL;
+      return generatorFactory.create(sampleSeed ^ (sampleSeed >>> 31));
+   }
+
    /**
-    * Method for incrementing cumDirected
+    * Sets the number of threads generating samples
+    * @param threads
     */
-   public synchronized void addCumDirected(){
-      cumDirected++;
+   public void setNumberThreads(int threads){
+      numberThreads=Math.max(1, threads);
+   }
+
+   /**
+    * Gets the number of threads generating samples
+    * @return
+    */
+   public int getNumberThreads(){
+      return numberThreads;
+   }
+
+   /**
+    * Sets the number of entries of the cache of checks used by every
+    * thread (0 for not using a cache)
+    * @param size
+    */
+   public void setCacheSize(int size){
+      cacheSize=size;
    }
    
    /**
-    * Method for incrementing cumconnected
+    * Gets the number of entries of the cache of checks
+    * @return 
     */
-   public synchronized void addCumConnected(){
-      cumConnected++;
+   public int getCacheSize(){
+      return cacheSize;
    }
    
    /**
-    * Method for incrementing cumDirectedConnected
+    * Sets if the graphs with up to PackedGraph.MAX_VARIABLES variables
+    * are stored in packed form
+    * @param packed
+    */
+   public void setPackedGraphs(boolean packed){
+      packedGraphs=packed;
+   }
+
+   /**
+    * Tests if the graphs with few variables are stored in packed form
+    * @return
+    */
+   public boolean usePackedGraphs(){
+      return packedGraphs;
+   }
+
+   /**
+    * Sets if the chains count the steps where the graph is connected
+    * @param connectedSteps
+    */
+   public void setConnectedSteps(boolean connectedSteps){
+      this.connectedSteps=connectedSteps;
+   }
+
+   /**
+    * Tests if the chains count the steps where the graph is connected
+    * @return
+    */
+   public boolean countConnectedSteps(){
+      return connectedSteps;
+   }
+
+   /**
+    * Sets if the graphs are stored as lists of adjacent nodes
+    * @param sparse
+    */
+   public void setSparseGraphs(boolean sparse){
+      sparseGraphs=sparse;
+   }
+
+   /**
+    * Tests if the graphs are stored as lists of adjacent nodes
+    * @return
+    */
+   public boolean useSparseGraphs(){
+      return sparseGraphs;
+   }
+
+   /**
+    * Sets the table with the results of the checks
+    * @param table
     */
-   public synchronized void addCumDirectedConnected(){
-      cumDirectedConnected++;
+   public void setCheckTable(CheckTable table){
+      checkTable=table;
+   }
+
+   /**
+    * Gets the table with the results of the checks (null if not used)
+    * @return
+    */
+   public CheckTable getCheckTable(){
+      return checkTable;
+   }
+
+   /**
+    * Gets the object accumulating the results of the samples
+    * @return
+    */
+   public SimulationStats getStatistics(){
+      return statistics;
    }
 
    /**
@@ -247,6 +488,18 @@ public class MCMC {
       String message = new String();
       String messageInfo=new String();
       String header = null;
+      SimulationStats.Snapshot snapshot = statistics.snapshot();
+      long cumDirected = snapshot.getDirected();
+      long cumConnected = snapshot.getConnected();
+      long cumDirectedConnected = snapshot.getDirectedConnected();
+      double iterEqual = snapshot.getValue(SimulationStats.EQUAL);
+      double iterAddLink = snapshot.getValue(SimulationStats.ADD_LINK);
+      double iterDeleteLink = snapshot.getValue(SimulationStats.DELETE_LINK);
+      double iterAddArc = snapshot.getValue(SimulationStats.ADD_ARC);
+      double iterDeleteArc = snapshot.getValue(SimulationStats.DELETE_ARC);
+      double iterAddVStructure = snapshot.getValue(SimulationStats.ADD_VSTRUCTURE);
+      double iterDeleteVStructure = snapshot.getValue(SimulationStats.DELETE_VSTRUCTURE);
+      double iterConnected = snapshot.getValue(SimulationStats.CONNECTED_STEPS);
 
       // The first time the header information will be printed
       if (counter == 0) {
@@ -277,7 +530,8 @@ public class MCMC {
               + iterDeleteVStructure / (double) iter + "  "
               + (iterEqual + iterAddLink + iterDeleteLink
               + iterAddArc + iterDeleteArc + iterAddVStructure
-              + iterDeleteVStructure) / (double) iter + "\n";
+              + iterDeleteVStructure) / (double) iter + "  "
+              + iterConnected / (double) iter + "\n";
 
       if (counter == 0) {
          message=message.concat(header);
@@ -299,7 +553,6 @@ public class MCMC {
       String message;
       int numberArcs, numberLinks;
       double total;
-      graph.countArcsLinks();
       numberArcs = graph.getNumberArcs();
       numberLinks = graph.getNumberLinks();
       total = numberArcs + numberLinks;
@@ -334,6 +587,7 @@ public class MCMC {
       header = header + "(15) : prob. add v structure\n";
       header = header + "(16) : prob. delete v structure\n";
       header = header + "(17) : prob. valid structure\n";
+      header = header + "(18) : prob. connected along the chains\n";
       header = header + "-----------------------------------------------------------------\n";
 
       // Return header
@@ -350,6 +604,19 @@ public class MCMC {
       if (args.length != 4) {
          System.out.printf("\n Program use: ");
          System.out.printf("\n Java counting.MCMC n_vars n_its n_samples first_id\n");
+         System.out.printf("\n Options (system properties):");
+         System.out.printf("\n   -Dcounting.thinning=steps between samples of a long chain per thread (default 0: a chain per sample)");
+         System.out.printf("\n   -Dcounting.burnIn=steps of every long chain before its first sample (default n_its)");
+         System.out.printf("\n   -Dcounting.nfold=true to jump directly to valid neighbour graphs (rejection-free chains)");
+         System.out.printf("\n   -Dcounting.skipAhead=true to skip at once the steps proposing no change");
+         System.out.printf("\n   -Dcounting.seed=seed of the simulation (default: random)");
+         System.out.printf("\n   -Dcounting.rng=algorithm of the random number generators (default " + DEFAULT_GENERATOR + ")");
+         System.out.printf("\n   -Dcounting.threads=number of threads generating samples (default: number of processors)");
+         System.out.printf("\n   -Dcounting.cacheSize=entries of the cache of checks per thread (default 0: no cache)");
+         System.out.printf("\n   -Dcounting.packed=true to store the graphs with up to 8 variables packed into longs");
+         System.out.printf("\n   -Dcounting.connectedSteps=false to not count the connected steps of the chains (column 18 is 0)");
+         System.out.printf("\n   -Dcounting.sparse=true to store the graphs as lists of adjacent nodes (many variables)");
+         System.out.printf("\n   -Dcounting.checkTable=file built by counting.CheckTable, for checking the graphs by lookup\n");
          System.exit(0);
       }
 
@@ -363,6 +630,32 @@ public class MCMC {
 
       // Creates an object for performing the experiment
       MCMC object = new MCMC(numVars, numIterations, numSamples, firstId);
+      try {
+         object.setGeneratorAlgorithm(System.getProperty("counting.rng", DEFAULT_GENERATOR));
+      } catch (IllegalArgumentException e) {
+         System.out.println("Unknown random number generator: " + System.getProperty("counting.rng"));
+         System.exit(0);
+      }
+      object.setSeed(Long.getLong("counting.seed", object.getSeed()));
+      System.out.println("Seed: " + object.getSeed() + "\n");
+      object.setNFold(Boolean.getBoolean("counting.nfold"));
+      object.setSkipAhead(Boolean.getBoolean("counting.skipAhead"));
+      object.setThinning(Integer.getInteger("counting.thinning", 0));
+      object.setBurnIn(Integer.getInteger("counting.burnIn", numIterations));
+      object.setNumberThreads(Integer.getInteger("counting.threads", object.getNumberThreads()));
+      object.setCacheSize(Integer.getInteger("counting.cacheSize", 0));
+      object.setPackedGraphs(Boolean.getBoolean("counting.packed"));
+      object.setSparseGraphs(Boolean.getBoolean("counting.sparse"));
+      object.setConnectedSteps(!"false".equals(System.getProperty("counting.connectedSteps")));
+      String tableFileName = System.getProperty("counting.checkTable");
+      if (tableFileName != null) {
+         CheckTable table = CheckTable.load(tableFileName);
+         if (table.getNumberVariables() != numVars) {
+            System.out.println("The check table is for " + table.getNumberVariables() + " variables");
+            System.exit(0);
+         }
+         object.setCheckTable(table);
+      }
 
       // Perform the simulation
       object.simulate();
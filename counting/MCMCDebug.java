@@ -460,7 +460,6 @@ public class MCMCDebug {
       String message;
       int numberArcs, numberLinks;
       double total;
-      graph.countArcsLinks();
       numberArcs = graph.getNumberArcs();
       numberLinks = graph.getNumberLinks();
       total = numberArcs + numberLinks;
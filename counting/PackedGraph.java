@@ -0,0 +1,593 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+/**
+ * Class for representing graphs with up to 8 variables using only
+ * primitive longs. The state is stored with 2 bits for every pair of
+ * nodes i < j (28 pairs at most): 0 if there is no edge, 1 for i->j,
+ * 2 for j->i and 3 for i-j. The sets of parents, children and neighbours
+ * of every node are kept as well, one byte per node in a long, so that
+ * all the operations and checks are performed with bit operations
+ * @author mgomez, jmpeña
+ */
+public class PackedGraph implements GraphEngine {
+   /**
+    * Maximum number of variables
+    */
+   static final int MAX_VARIABLES = 8;
+   /**
+    * Codes for the pairs of nodes
+    */
+   static final int NONE = 0;
+   static final int FORWARD = 1;
+   static final int BACKWARD = 2;
+   static final int UNDIRECTED = 3;
+   /**
+    * Data member to store the number of variables
+    */
+   private final int numberVariables;
+   /**
+    * Data member to store the mask with all the variables
+    */
+   private final int allNodes;
+   /**
+    * Data member to store the code of the graph
+    */
+   private long state;
+   /**
+    * Data members to store the sets of parents, children and neighbours:
+    * the byte v contains the set of node v
+    */
+   private long parents, children, neighbours;
+   /**
+    * Data members to store the graph previous to the last operation
+    */
+   private long lastState, lastParents, lastChildren, lastNeighbours;
+
+   /**
+    * Class constructor
+    *
+    * @param numVariables
+    */
+   public PackedGraph(int numVariables) {
+      this.numberVariables = numVariables;
+      this.allNodes = (1 << numVariables) - 1;
+      state = 0;
+      parents = 0;
+      children = 0;
+      neighbours = 0;
+      keepState();
+   }
+
+   /**
+    * Class constructor for a graph given by its code
+    *
+    * @param numVariables
+    * @param code code of the graph, as returned by getState
+    */
+   public PackedGraph(int numVariables, long code) {
+      this(numVariables);
+      setState(code);
+   }
+
+   /**
+    * Sets the graph given by its code, replacing the current one. The
+    * graph previous to the change is not kept for undo
+    *
+    * @param code code of the graph, as returned by getState
+    */
+   void setState(long code) {
+      state = 0;
+      parents = 0;
+      children = 0;
+      neighbours = 0;
+
+      // Sets the edges for every pair
+      for (int j = 1; j < numberVariables; j++) {
+         for (int i = 0; i < j; i++) {
+            setPair(i, j, (int) (code >>> shift(i, j)) & 3);
+         }
+      }
+      keepState();
+   }
+
+   /**
+    * Gets the number of pairs of nodes, 2 bits of the code for each one
+    *
+    * @param numVariables
+    * @return
+    */
+   static int numberPairs(int numVariables) {
+      return numVariables * (numVariables - 1) / 2;
+   }
+
+   /**
+    * Gets the code of the graph
+    *
+    * @return
+    */
+   public long getState() {
+      return state;
+   }
+
+   /**
+    * The code of the graph is used as hash: it is different for every
+    * graph
+    *
+    * @return
+    */
+   @Override
+   public long getStateHash() {
+      return state;
+   }
+
+   /**
+    * Gets the number of variables
+    *
+    * @return
+    */
+   @Override
+   public int getNumberVariables() {
+      return numberVariables;
+   }
+
+   @Override
+   public boolean isAddArcPossible(int x, int y) {
+      return (x != y && !adjacent(x, y));
+   }
+
+   @Override
+   public void addArc(int x, int y) {
+      keepState();
+      setPair(x, y, FORWARD);
+   }
+
+   @Override
+   public boolean isDeleteArcPossible(int x, int y) {
+      return (x != y && pair(x, y) == FORWARD);
+   }
+
+   @Override
+   public void deleteArc(int x, int y) {
+      keepState();
+      setPair(x, y, NONE);
+   }
+
+   @Override
+   public boolean isAddLinkPossible(int x, int y) {
+      return (x != y && !adjacent(x, y));
+   }
+
+   @Override
+   public void addLink(int x, int y) {
+      keepState();
+      setPair(x, y, UNDIRECTED);
+   }
+
+   @Override
+   public boolean isDeleteLinkPossible(int x, int y) {
+      return (x != y && pair(x, y) == UNDIRECTED);
+   }
+
+   @Override
+   public void deleteLink(int x, int y) {
+      if (x != y && pair(x, y) == UNDIRECTED) {
+         keepState();
+         setPair(x, y, NONE);
+      }
+   }
+
+   @Override
+   public boolean isAddVStructurePossible(int x, int y, int z) {
+      return (x != y && x != z && y != z && !adjacent(x, y)
+              && !adjacent(x, z) && !adjacent(y, z));
+   }
+
+   @Override
+   public void addVStructure(int x, int y, int z) {
+      keepState();
+      setPair(x, z, FORWARD);
+      setPair(y, z, FORWARD);
+   }
+
+   @Override
+   public boolean isDeleteVStructurePossible(int x, int y, int z) {
+      return (x != y && x != z && y != z && !adjacent(x, y)
+              && pair(x, z) == FORWARD && pair(y, z) == FORWARD);
+   }
+
+   @Override
+   public void deleteVStructure(int x, int y, int z) {
+      keepState();
+      setPair(x, z, NONE);
+      setPair(y, z, NONE);
+   }
+
+   /**
+    * Undo the last operation, restoring the stored state
+    */
+   @Override
+   public void undo() {
+      state = lastState;
+      parents = lastParents;
+      children = lastChildren;
+      neighbours = lastNeighbours;
+   }
+
+   /**
+    * Checks the graph: no flags, no directed cycles, the links form
+    * chordal components and every arrow is strongly protected
+    *
+    * @return result of the check
+    */
+   @Override
+   public boolean check() {
+      return !containsFlag() && isAcyclic() && isChordal()
+              && containsStronglyProtectedArrows();
+   }
+
+   /**
+    * With so few variables the whole check is as cheap as examining the
+    * nodes of the last operation
+    *
+    * @return result of the check
+    */
+   @Override
+   public boolean checkLastOperation() {
+      return check();
+   }
+
+   /**
+    * Tests if the graph contains a single connected component
+    *
+    * @return
+    */
+   @Override
+   public boolean isConnected() {
+      int reached = 1;
+      int previous = 0;
+
+      // Adds the adjacent nodes of the reached nodes until no more are added
+      while (reached != previous) {
+         previous = reached;
+         for (int v = 0; v < numberVariables; v++) {
+            if ((reached & (1 << v)) != 0) {
+               reached |= adjacents(v);
+            }
+         }
+      }
+
+      // Return the result
+      return reached == allNodes;
+   }
+
+   /**
+    * Tests if the graph do not contains undirected links
+    *
+    * @return
+    */
+   @Override
+   public boolean doNotContainsUndirectedLinks() {
+      return neighbours == 0;
+   }
+
+   /**
+    * Gets the number of arcs
+    *
+    * @return
+    */
+   @Override
+   public int getNumberArcs() {
+      return Long.bitCount(children);
+   }
+
+   /**
+    * Gets the number of links
+    *
+    * @return
+    */
+   @Override
+   public int getNumberLinks() {
+      return Long.bitCount(neighbours) / 2;
+   }
+
+   /**
+    * Gets the graph as an object of Graph class
+    *
+    * @return
+    */
+   @Override
+   public Graph toGraph() {
+      Graph graph = new Graph(numberVariables);
+
+      for (int x = 0; x < numberVariables; x++) {
+         for (int y = 0; y < numberVariables; y++) {
+            if ((children(x) & (1 << y)) != 0) {
+               graph.addArc(x, y);
+            } else if (x < y && (neighbours(x) & (1 << y)) != 0) {
+               graph.addLink(x, y);
+            }
+         }
+      }
+
+      return graph;
+   }
+
+////////////////////////////// PRIVATE METHODS ////////////////////////////
+   /**
+    * Checks if the graph contains flags: arrows i->j with a neighbour of j
+    * not being child of i
+    *
+    * @return
+    */
+   private boolean containsFlag() {
+      boolean found = false;
+
+      for (int i = 0; i < numberVariables && !found; i++) {
+         int heads = children(i);
+         while (heads != 0 && !found) {
+            int j = Integer.numberOfTrailingZeros(heads);
+            heads &= heads - 1;
+            found = (neighbours(j) & ~children(i)) != 0;
+         }
+      }
+
+      return found;
+   }
+
+   /**
+    * Checks there are no directed cycles, removing nodes without children
+    * while possible
+    *
+    * @return
+    */
+   private boolean isAcyclic() {
+      int alive = allNodes;
+      boolean removed = true;
+
+      while (alive != 0 && removed) {
+         removed = false;
+         for (int v = 0; v < numberVariables; v++) {
+            if ((alive & (1 << v)) != 0 && (children(v) & alive) == 0) {
+               alive &= ~(1 << v);
+               removed = true;
+            }
+         }
+      }
+
+      return alive == 0;
+   }
+
+   /**
+    * Checks the links form chordal components, removing nodes whose
+    * remaining neighbours are linked between them while possible
+    *
+    * @return
+    */
+   private boolean isChordal() {
+      int alive = allNodes;
+      boolean removed = true;
+
+      while (alive != 0 && removed) {
+         removed = false;
+         for (int v = 0; v < numberVariables; v++) {
+            if ((alive & (1 << v)) != 0 && isSimplicial(v, alive)) {
+               alive &= ~(1 << v);
+               removed = true;
+            }
+         }
+      }
+
+      return alive == 0;
+   }
+
+   /**
+    * Checks if the neighbours of a node among the alive nodes are linked
+    * between them
+    *
+    * @param node
+    * @param alive
+    * @return
+    */
+   private boolean isSimplicial(int node, int alive) {
+      int others = neighbours(node) & alive;
+      int rest = others;
+      boolean result = true;
+
+      while (rest != 0 && result) {
+         int u = Integer.numberOfTrailingZeros(rest);
+         rest &= rest - 1;
+         result = ((others & ~(1 << u)) & ~neighbours(u)) == 0;
+      }
+
+      return result;
+   }
+
+   /**
+    * Checks if every arrow of the graph is strongly protected
+    *
+    * @return
+    */
+   private boolean containsStronglyProtectedArrows() {
+      boolean protectedArrows = true;
+
+      for (int i = 0; i < numberVariables && protectedArrows; i++) {
+         int heads = children(i);
+         while (heads != 0 && protectedArrows) {
+            int j = Integer.numberOfTrailingZeros(heads);
+            heads &= heads - 1;
+            protectedArrows = isProtected(i, j);
+         }
+      }
+
+      return protectedArrows;
+   }
+
+   /**
+    * Checks if the arrow i->j is strongly protected
+    *
+    * @param i
+    * @param j
+    * @return
+    */
+   private boolean isProtected(int i, int j) {
+      // k->i with k and j non adjacent, k->j with k and i non adjacent,
+      // or i->k->j
+      boolean result = (parents(i) & ~adjacents(j)) != 0
+              || (parents(j) & ~adjacents(i) & ~(1 << i)) != 0
+              || (children(i) & parents(j)) != 0;
+
+      // Two non adjacent neighbours of i being parents of j
+      int candidates = neighbours(i) & parents(j);
+      int rest = candidates;
+      while (rest != 0 && !result) {
+         int k = Integer.numberOfTrailingZeros(rest);
+         rest &= rest - 1;
+         result = (candidates & ~adjacents(k) & ~(1 << k)) != 0;
+      }
+
+      return result;
+   }
+
+   /**
+    * Stores the current graph for undo
+    */
+   private void keepState() {
+      lastState = state;
+      lastParents = parents;
+      lastChildren = children;
+      lastNeighbours = neighbours;
+   }
+
+   /**
+    * Gets the code of the pair x, y seen from x: FORWARD means x->y and
+    * BACKWARD means y->x
+    *
+    * @param x
+    * @param y
+    * @return
+    */
+   private int pair(int x, int y) {
+      int code;
+
+      if (x < y) {
+         code = (int) (state >>> shift(x, y)) & 3;
+      } else {
+         code = (int) (state >>> shift(y, x)) & 3;
+         if (code == FORWARD || code == BACKWARD) {
+            code = 3 - code;
+         }
+      }
+
+      return code;
+   }
+
+   /**
+    * Sets the code of the pair x, y seen from x, updating the sets of the
+    * nodes
+    *
+    * @param x
+    * @param y
+    * @param code
+    */
+   private void setPair(int x, int y, int code) {
+      long xy = 1L << ((x << 3) + y);
+      long yx = 1L << ((y << 3) + x);
+
+      // Removes the current edge
+      children &= ~(xy | yx);
+      parents &= ~(xy | yx);
+      neighbours &= ~(xy | yx);
+
+      // Sets the new one
+      switch (code) {
+         case FORWARD:
+            children |= xy;
+            parents |= yx;
+            break;
+         case BACKWARD:
+            children |= yx;
+            parents |= xy;
+            break;
+         case UNDIRECTED:
+            neighbours |= xy | yx;
+            break;
+      }
+
+      // Updates the code of the graph
+      if (x > y) {
+         int aux = x;
+         x = y;
+         y = aux;
+         if (code == FORWARD || code == BACKWARD) {
+            code = 3 - code;
+         }
+      }
+      state = (state & ~(3L << shift(x, y))) | ((long) code << shift(x, y));
+   }
+
+   /**
+    * Checks if two nodes are adjacent
+    *
+    * @param x
+    * @param y
+    * @return
+    */
+   private boolean adjacent(int x, int y) {
+      return (adjacents(x) & (1 << y)) != 0;
+   }
+
+   /**
+    * Gets the set of parents of a node
+    *
+    * @param node
+    * @return
+    */
+   private int parents(int node) {
+      return (int) (parents >>> (node << 3)) & 0xFF;
+   }
+
+   /**
+    * Gets the set of children of a node
+    *
+    * @param node
+    * @return
+    */
+   private int children(int node) {
+      return (int) (children >>> (node << 3)) & 0xFF;
+   }
+
+   /**
+    * Gets the set of neighbours of a node
+    *
+    * @param node
+    * @return
+    */
+   private int neighbours(int node) {
+      return (int) (neighbours >>> (node << 3)) & 0xFF;
+   }
+
+   /**
+    * Gets the set of nodes adjacent to a node
+    *
+    * @param node
+    * @return
+    */
+   private int adjacents(int node) {
+      return (int) ((parents | children | neighbours) >>> (node << 3)) & 0xFF;
+   }
+
+   /**
+    * Gets the position of the two bits of the pair i < j in the code
+    *
+    * @param i
+    * @param j
+    * @return
+    */
+   private static int shift(int i, int j) {
+      return (j * (j - 1) / 2 + i) << 1;
+   }
+}
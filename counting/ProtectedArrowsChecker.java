@@ -0,0 +1,195 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.util.Random;
+
+/**
+ * Class for checking that the test of strongly protected arrows of Graph,
+ * done with operations on the bitsets, gives the same result as the
+ * original test with loops over the cells of the matrix. The tests are
+ * compared on random graphs with arcs and links and along random chains,
+ * where the graphs are near the limit between valid and not valid ones.
+ * The exit status is 1 if some result differs
+ * @author mgomez, jmpeña
+ */
+public class ProtectedArrowsChecker {
+   /**
+    * Number of random graphs with few variables, and maximum number of
+    * variables for them
+    */
+   private static final int RANDOM_GRAPHS = 20000;
+   private static final int MAX_SMALL_VARIABLES = 13;
+   /**
+    * Numbers of variables of the chains and steps of every chain
+    */
+   private static final int CHAIN_VARIABLES[] = {20, 70, 130};
+   private static final int CHAIN_STEPS = 20000;
+   /**
+    * Data member to store the number of comparisons, of graphs with all
+    * the arrows protected and of differences
+    */
+   private static int comparisons = 0;
+   private static int protectedGraphs = 0;
+   private static int differences = 0;
+
+   /**
+    * Main method
+    *
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      Random generator = new Random(0);
+
+      // Random graphs: every pair of nodes gets an arc, a link or nothing
+      for (int i = 0; i < RANDOM_GRAPHS; i++) {
+         int n = 2 + generator.nextInt(MAX_SMALL_VARIABLES - 1);
+         double arcs = generator.nextDouble();
+         double links = generator.nextDouble() * (1 - arcs);
+         Graph graph = new Graph(n);
+         for (int x = 0; x < n; x++) {
+            for (int y = x + 1; y < n; y++) {
+               double value = generator.nextDouble();
+               if (value < arcs) {
+                  if (generator.nextBoolean()) {
+                     graph.addArc(x, y);
+                  } else {
+                     graph.addArc(y, x);
+                  }
+               } else if (value < arcs + links) {
+                  graph.addLink(x, y);
+               }
+            }
+         }
+         compare(graph);
+      }
+      System.out.println("Random graphs: " + comparisons + " compared (" + protectedGraphs
+              + " protected), " + differences + " different");
+
+      // Chains: every proposal is compared before keeping or undoing it
+      for (int n : CHAIN_VARIABLES) {
+         int initialComparisons = comparisons;
+         int initialProtected = protectedGraphs;
+         int initialDifferences = differences;
+         Graph graph = new Graph(n);
+         for (int step = 0; step < CHAIN_STEPS; step++) {
+            if (propose(graph, generator)) {
+               compare(graph);
+               if (!graph.check()) {
+                  graph.undo();
+               }
+            }
+         }
+         System.out.println("Chain with " + n + " variables: " + (comparisons - initialComparisons)
+                 + " compared (" + (protectedGraphs - initialProtected) + " protected), "
+                 + (differences - initialDifferences) + " different");
+      }
+
+      // Shows the result
+      System.out.println(differences == 0 ? "OK: same results" : "FAILED: " + differences + " different results");
+      if (differences != 0) {
+         System.exit(1);
+      }
+   }
+
+   /**
+    * Makes a random change on the graph, if possible (also used by
+    * EliminationChecker)
+    *
+    * @param graph
+    * @param generator
+    * @return true if the graph was changed
+    */
+   static boolean propose(Graph graph, Random generator) {
+      int n = graph.getNumberVariables();
+      int x = generator.nextInt(n);
+      int y = generator.nextInt(n);
+      int z = generator.nextInt(n);
+
+      // Return if there was a change
+      return LastOperationChecker.perform(graph, generator.nextInt(6), x, y, z);
+   }
+
+   /**
+    * Compares the results of both tests on a graph
+    *
+    * @param graph
+    */
+   private static void compare(Graph graph) {
+      boolean expected = containsStronglyProtectedArrows(graph.getGraph(), graph.getNumberVariables());
+      boolean result = graph.containsStronglyProtectedArrows();
+
+      comparisons++;
+      if (expected) {
+         protectedGraphs++;
+      }
+      if (result != expected) {
+         differences++;
+         if (differences == 1) {
+            System.out.println("First difference: expected " + expected + ", got " + result);
+            graph.print();
+         }
+      }
+   }
+
+   /**
+    * Original test of strongly protected arrows, with loops over the
+    * cells of the matrix
+    *
+    * @param graph matrix of the graph
+    * @param numberVariables
+    * @return
+    */
+   private static boolean containsStronglyProtectedArrows(int graph[][], int numberVariables) {
+      boolean protectedArrow = true;
+      boolean stopExternalLoop = false, stopInternalLoop = false;
+
+      // Consider every variable
+      for (int i = 0; i < numberVariables && !stopExternalLoop; i++) {
+         for (int j = 0; j < numberVariables && !stopExternalLoop; j++) {
+            // Consider if the links between i and j (it it exists)
+            // is protected
+            if (graph[i][j] == Graph.DIRECTED) {
+               protectedArrow = false;
+               stopInternalLoop = false;
+
+               // Considers the third variable
+               for (int k = 0; k < numberVariables && !stopInternalLoop; k++) {
+                  // Considers the different alternatives
+                  if ( // SEVERAL CASES
+                          (graph[k][i] == Graph.DIRECTED && graph[j][k] == Graph.NONE && graph[k][j] == Graph.NONE)
+                          || (k != i && graph[k][j] == Graph.DIRECTED && graph[i][k] == Graph.NONE && graph[k][i] == Graph.NONE)
+                          || (graph[i][k] == Graph.DIRECTED && graph[k][j] == Graph.DIRECTED)) {
+                     protectedArrow = true;
+                     stopInternalLoop = true;
+                  }
+               }
+
+               stopInternalLoop = false;
+               // Considers protected arrows respect to 4 nodes
+               if (!protectedArrow) {
+                  for (int k = 0; k < numberVariables && !stopInternalLoop; k++) {
+                     for (int l = 0; l < numberVariables && !stopInternalLoop; l++) {
+                        if (k != l && graph[i][k] == Graph.UNDIRECTED && graph[i][l] == Graph.UNDIRECTED
+                                && graph[k][j] == Graph.DIRECTED && graph[l][j] == Graph.DIRECTED
+                                && graph[k][l] == Graph.NONE && graph[l][k] == Graph.NONE) {
+                           protectedArrow = true;
+                           stopInternalLoop = true;
+                        }
+                     }
+                  }
+
+                  if (!protectedArrow) {
+                     stopExternalLoop = true;
+                  }
+               }
+            }
+         }
+      }
+
+      // Return protected arrow
+      return protectedArrow;
+   }
+}
@@ -0,0 +1,109 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+/**
+ * Class for the operations over the rows of the matrix of the graphs
+ * (search a value along a row), used by Graph.removeDirectedLinks when
+ * the samples are processed: the chains work on the bitsets of the nodes.
+ * The scalar implementation is used by default. The one using the Java
+ * Vector API (counting.vector package, which needs the jdk.incubator.vector
+ * module) is used only with -Dcounting.vector=true: with rows of 32
+ * variables it is slower than the scalar one (see RowKernelsBenchmark)
+ * @author mgomez, jmpeña
+ */
+public abstract class RowKernels {
+   /**
+    * Name of the class with the implementation using the Vector API
+    */
+   private static final String VECTOR_KERNELS = "counting.vector.VectorRowKernels";
+   /**
+    * Implementations of the kernels
+    */
+   private static final RowKernels SCALAR = new ScalarRowKernels();
+   private static final RowKernels INSTANCE = load();
+
+   /**
+    * Gets the first position of a row, from a certain one, with a value
+    *
+    * @param row
+    * @param from first position to consider
+    * @param value
+    * @return the position, or -1 if the value is not found
+    */
+   public abstract int indexOf(int row[], int from, int value);
+
+   /**
+    * Gets the name of the implementation
+    *
+    * @return
+    */
+   public abstract String getName();
+
+   /**
+    * Gets the kernels to use: the ones using the Vector API if they are
+    * requested with -Dcounting.vector=true and available, and the scalar
+    * ones otherwise
+    *
+    * @return
+    */
+   public static RowKernels getInstance() {
+      return INSTANCE;
+   }
+
+   /**
+    * Gets the scalar kernels
+    *
+    * @return
+    */
+   public static RowKernels getScalar() {
+      return SCALAR;
+   }
+
+   /**
+    * Loads the implementation using the Vector API, if requested and
+    * possible
+    *
+    * @return
+    */
+   private static RowKernels load() {
+      RowKernels kernels = SCALAR;
+
+      if (Boolean.getBoolean("counting.vector")) {
+         try {
+            kernels = (RowKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+         } catch (ReflectiveOperationException | LinkageError e) {
+            // The module is not available: the scalar kernels are used
+            kernels = SCALAR;
+         }
+      }
+
+      // Return the kernels
+      return kernels;
+   }
+
+   /**
+    * Scalar implementation of the kernels
+    */
+   private static class ScalarRowKernels extends RowKernels {
+      @Override
+      public int indexOf(int row[], int from, int value) {
+         int result = -1;
+
+         for (int j = from; j < row.length && result == -1; j++) {
+            if (row[j] == value) {
+               result = j;
+            }
+         }
+
+         return result;
+      }
+
+      @Override
+      public String getName() {
+         return "scalar";
+      }
+   }
+}
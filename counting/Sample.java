@@ -21,6 +21,12 @@ import java.util.Iterator;
  * @author mgomez, jmpeña
  */
 public class Sample implements Serializable {
+   /**
+    * Serial version kept equal to the one computed for the original
+    * class, so that the samples already stored can be read
+    */
+   private static final long serialVersionUID = 7348479416526391056L;
+
    /**
     * Data member to store a Graph
     */
@@ -83,6 +89,11 @@ public class Sample implements Serializable {
    private double deleteArcProb;
    private double addVStructureProb;
    private double deleteVStructureProb;
+   /**
+    * Data member to store the proportion of steps of the chain where the
+    * graph was connected
+    */
+   private double connectedStepsProb;
    /**
     * Data member to store the number of arcs and its prob
     */
@@ -266,6 +277,25 @@ public class Sample implements Serializable {
       return deleteVStructureProb;
    }
 
+   /**
+    * Method for setting the proportion of steps of the chain with a
+    * connected graph
+    *
+    * @param prob
+    */
+   public void setConnectedStepsProb(double prob) {
+      connectedStepsProb = prob;
+   }
+
+   /**
+    * Gets connectedStepsProb
+    *
+    * @return
+    */
+   public double getConnectedStepsProb() {
+      return connectedStepsProb;
+   }
+
    /**
     * Gets arcsProb
     *
@@ -347,8 +377,7 @@ public class Sample implements Serializable {
     */
    public void process() {
       // Gets information about the number of arcs and
-      // links
-      graph.countArcsLinks();
+      // links (kept by the graph)
       numberArcs = graph.getNumberArcs();
       numberLinks = graph.getNumberLinks();
 
@@ -423,6 +452,7 @@ public class Sample implements Serializable {
       System.out.println("Delete link prob: " + deleteLinkProb);
       System.out.println("Add v-structure prob: " + addVStructureProb);
       System.out.println("Delete v-structure prob: " + deleteVStructureProb);
+      System.out.println("Connected steps prob: " + connectedStepsProb);
       System.out.println("Connected: " + connected);
       System.out.println("Undirected links: " + undirected);
       System.out.println("Number arcs: " + numberArcs);
@@ -5,7 +5,8 @@
 package counting;
 
 import java.io.*;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
 import java.util.Scanner;
 
 /**
@@ -14,6 +15,20 @@ import java.util.Scanner;
  * @author mgomez, jmpeña
  */
 public class SampleGenerator implements Runnable{
+   /**
+    * Operations to choose from (values() returns a new array on every call)
+    */
+   private static final Operations OPERATIONS[] = Operations.values();
+   /**
+    * Workspace for checking the graphs, shared by all the samples generated
+    * by the same thread
+    */
+   private static final ThreadLocal<GraphWorkspace> workspaces = new ThreadLocal<GraphWorkspace>();
+   /**
+    * Cache of the results of the checks, shared by all the samples
+    * generated by the same thread (only if enabled in the simulation)
+    */
+   private static final ThreadLocal<CheckCache> caches = new ThreadLocal<CheckCache>();
    /**
     * Data member of MCMC class for updating the properties
     * of the graph
@@ -27,7 +42,11 @@ public class SampleGenerator implements Runnable{
    /**
     * Data member to store the graph
     */
-   private Graph graph;
+   private GraphEngine graph;
+   /**
+    * Data member to store the graph if it is packed (null otherwise)
+    */
+   private PackedGraph packedGraph;
    /**
     * Data member to store the number of iterations
     */
@@ -37,9 +56,18 @@ public class SampleGenerator implements Runnable{
     */
    private final int numberSamples;
    /**
-    * Data member to store the id
+    * Data member to store the id (of the first sample, for chains
+    * generating several samples)
     */
    private final int id;
+   /**
+    * Data members to store the number of samples generated by the chain,
+    * the number of steps made before the first one (burn-in) and the
+    * number of steps between samples (thinning interval)
+    */
+   private final int numberChainSamples;
+   private final int burnIn;
+   private final int thinning;
    
    /**
     * Data member to accumulate the results
@@ -53,11 +81,66 @@ public class SampleGenerator implements Runnable{
    private double deleteVStructure;
    private boolean directed;
    private boolean connected;
-   private boolean directedConnected;
+   /**
+    * Data member to accumulate the steps of the chain where the graph
+    * contains a single connected component
+    */
+   private double connectedSteps;
    /**
     * Random number generator
     */
-   private Random generator;
+   private RandomGenerator generator;
+   /**
+    * Cache for the results of the checks (null if not used)
+    */
+   private CheckCache cache;
+   /**
+    * Table with the results of the checks (null if not used)
+    */
+   private CheckTable table;
+   /**
+    * Data member to store if the chain is simulated jumping directly to
+    * the valid neighbour graphs (n-fold way) instead of step by step
+    */
+   private boolean nFold;
+   /**
+    * Data member to store if the steps surely proposing no change are
+    * skipped, drawing their number at once
+    */
+   private boolean skipAhead;
+   /**
+    * Data member to store if the steps where the graph is connected are
+    * counted
+    */
+   private boolean countConnected;
+   /**
+    * Data member to store, for the skip-ahead, the probability of every
+    * operation (by its ordinal) being proposed in a step with nodes for
+    * which it is possible. The operations on v-structures keep their
+    * whole probability, as their nodes are tested in the step
+    */
+   private double proposalProbabilities[];
+   /**
+    * Data members to store the valid moves from the current graph for
+    * the n-fold way: operation, nodes and probability of being proposed
+    * and accepted in a step, as well as the probability of any of them
+    * (for the skip-ahead, of any proposal)
+    */
+   private int moveOperations[];
+   private int moveX[], moveY[], moveZ[];
+   private double moveProbabilities[];
+   private int numberMoves;
+   private double leaveProbability;
+   private boolean movesKnown;
+   /**
+    * Data members to store, while the chain stays at the current graph,
+    * the factor for drawing the number of steps at it, the expected
+    * proportion of equal operations among them and if the graph is
+    * connected (false if the connected steps are not counted)
+    */
+   private double stayFactor;
+   private double equalShare;
+   private boolean graphConnected;
    
    /**
     * Class constructor
@@ -70,30 +153,45 @@ public class SampleGenerator implements Runnable{
     */
    SampleGenerator(int numVars, int numIterations, int numSamples, int id,
       MCMC simulation) {
+      this(numVars, numIterations, numSamples, id, 1, 0, numIterations, simulation);
+   }
+
+   /**
+    * Class constructor for a long chain generating several samples: after
+    * the burn-in, a sample is stored every thinning steps
+    *
+    * @param numVars
+    * @param numIterations (operations of the simulation, used for naming
+    * the folder of the samples)
+    * @param numSamples (graphs to generate in the simulation)
+    * @param firstId id of the first sample of the chain
+    * @param chainSamples samples to generate with the chain
+    * @param burnIn steps before the first sample
+    * @param thinning steps between samples
+    * @param simulation
+    */
+   SampleGenerator(int numVars, int numIterations, int numSamples, int firstId,
+      int chainSamples, int burnIn, int thinning, MCMC simulation) {
       // Sets the data members
       this.numberVariables = numVars;
       this.numberOperations = numIterations;
       this.numberSamples = numSamples;
-      this.id=id;
+      this.id=firstId;
+      this.numberChainSamples=chainSamples;
+      this.burnIn=burnIn;
+      this.thinning=thinning;
       this.simulation=simulation;
 
       // Gives initial values to the data members
-      eq = 0;
-      addLink = 0;
-      deleteLink = 0;
-      addArc = 0;
-      deleteArc = 0;
-      addVStructure = 0;
-      deleteVStructure = 0;
+      resetCounters();
       directed = false;
       connected = false;
-      directedConnected = false;
 
       // Initialize graph to null
       graph = null;
       
-      // Creates the random number generator
-      generator=new Random();
+      // Creates the random number generator for this sample
+      generator=simulation.createGenerator(id);
    }
 
    /**
@@ -101,22 +199,115 @@ public class SampleGenerator implements Runnable{
     */
    @Override
    public void run() {
+      // Makes the graph and gets the structures of the thread
+      prepare();
+      long initialHits = (cache != null ? cache.getHits() : 0);
+      long initialMisses = (cache != null ? cache.getMisses() : 0);
+      
+      // Sets a crono at the beginning
+      double initialTime=System.currentTimeMillis();
+
+      // Burn-in: the steps are not counted for the samples
+      advance(burnIn);
+      resetCounters();
+
+      // Generates the samples, one after every thinning interval
+      for (int i = 0; i < numberChainSamples; i++) {
+         advance(thinning);
+         storeSample(id + i, System.currentTimeMillis() - initialTime);
+         initialTime = System.currentTimeMillis();
+         resetCounters();
+      }
+
+      // At the end update the counts of the cache
+      if (cache != null) {
+         simulation.getStatistics().addCacheCounts(cache.getHits() - initialHits,
+                 cache.getMisses() - initialMisses);
+      }
+   }
+
+   /**
+    * Prepares the chain: makes the empty graph, gets the workspace and the
+    * cache of the thread and reads the way of making the steps
+    */
+   void prepare() {
+      countConnected = simulation.countConnectedSteps();
+
+      // Makes a new graph: packed into longs if it is small enough (the
+      // table of checks is indexed by the code of packed graphs)
+      table = simulation.getCheckTable();
+      if (table != null || (simulation.usePackedGraphs()
+              && numberVariables <= PackedGraph.MAX_VARIABLES)) {
+         packedGraph = new PackedGraph(numberVariables);
+         graph = packedGraph;
+      } else if (simulation.useSparseGraphs()) {
+         // Lists of adjacent nodes, for many variables
+         graph = new SparseGraph(numberVariables);
+      } else {
+         Graph fullGraph = new Graph(numberVariables);
+
+         // Gets the workspace of the thread for the checks
+         GraphWorkspace workspace = workspaces.get();
+         if (workspace == null || workspace.getNumberVariables() != numberVariables) {
+            workspace = new GraphWorkspace(numberVariables);
+            workspaces.set(workspace);
+         }
+         fullGraph.setWorkspace(workspace);
+
+         // The connected components are kept along the chain, if the
+         // connected steps are counted
+         if (countConnected) {
+            fullGraph.enableConnectivityTracking();
+         }
+         graph = fullGraph;
+      }
+
+      // Gets the cache of the thread, if required
+      if (simulation.getCacheSize() > 0 && table == null) {
+         cache = caches.get();
+         if (cache == null) {
+            cache = new CheckCache(simulation.getCacheSize());
+            caches.set(cache);
+         }
+      }
+
+      // Way of making the steps
+      nFold = simulation.useNFold();
+      skipAhead = simulation.useSkipAhead();
+   }
+
+   /**
+    * Makes steps of the chain, one by one, with the n-fold way or
+    * skipping the steps without change
+    *
+    * @param steps
+    */
+   void advance(int steps) {
+      if (nFold) {
+         performNFoldSteps(steps);
+      } else if (skipAhead) {
+         performSkipSteps(steps);
+      } else {
+         performSteps(steps);
+      }
+   }
+
+   /**
+    * Makes steps of the chain, counting the operations performed
+    *
+    * @param steps
+    */
+   private void performSteps(int steps) {
       int operationCode;
 
       // Identifiers for the nodes to operate with
       int x, y, z;
 
-      // Makes a new graph
-      graph = new Graph(numberVariables);
-      
-      // Sets a crono at the beginning
-      double initialTime=System.currentTimeMillis();
-
-      // Make as many iterations as stored in numIterations
-      for (int i = 0; i < numberOperations; i++) {
-         operationCode=generator.nextInt(Operations.values().length);
+      // Make as many iterations as required
+      for (int i = 0; i < steps; i++) {
+         operationCode=generator.nextInt(OPERATIONS.length);
 
-         switch (Operations.values()[operationCode]) {
+         switch (OPERATIONS[operationCode]) {
             case EQUAL:
                eq++;
                break;
@@ -132,7 +323,7 @@ public class SampleGenerator implements Runnable{
                   graph.addLink(x, y);
 
                   // Check the graph
-                  if (graph.check() == false) {
+                  if (checkGraph() == false) {
                      // The operation must be reverted
                      graph.undo();
                   } else {
@@ -152,7 +343,7 @@ public class SampleGenerator implements Runnable{
                   graph.deleteLink(x, y);
 
                   // Check the graph
-                  if (graph.check() == false) {
+                  if (checkGraph() == false) {
                      graph.undo();
                   } else {
                      // Add to the corresponding counter
@@ -171,7 +362,7 @@ public class SampleGenerator implements Runnable{
                   graph.addArc(x, y);
 
                   // Check the graph
-                  if (graph.check() == false) {
+                  if (checkGraph() == false) {
                      graph.undo();
                   } else {
                      // Add the corresponding counter
@@ -190,7 +381,7 @@ public class SampleGenerator implements Runnable{
                   graph.deleteArc(x, y);
 
                   // Check the graph
-                  if (graph.check() == false) {
+                  if (checkGraph() == false) {
                      graph.undo();
                   } else {
                      // Add the corresponding counter
@@ -210,7 +401,7 @@ public class SampleGenerator implements Runnable{
                   graph.addVStructure(x, y, z);
 
                   // Check the graph
-                  if (graph.check() == false) {
+                  if (checkGraph() == false) {
                      graph.undo();
                   } else {
                      // Add the corresponding counter
@@ -230,7 +421,7 @@ public class SampleGenerator implements Runnable{
                   graph.deleteVStructure(x, y, z);
 
                   // Check the graph
-                  if (graph.check() == false) {
+                  if (checkGraph() == false) {
                      graph.undo();
                   } else {
                      // Add the corresponding counter
@@ -239,19 +430,419 @@ public class SampleGenerator implements Runnable{
                }
                break;
          }
+
+         // Counts the step if the graph is connected
+         if (countConnected && graph.isConnected()) {
+            connectedSteps++;
+         }
       }
-      
+   }
+
+   /**
+    * Makes steps of the chain with the n-fold way: the number of steps
+    * the chain stays at the current graph follows a geometric distribution
+    * with the probability of leaving it, and then the chain moves to one
+    * of the valid neighbour graphs with probability proportional to the
+    * one of being proposed in a step. The distribution of the graphs is
+    * the same as with performSteps. The steps without change are credited
+    * to the counter of equal operations with their expected proportion
+    *
+    * @param steps
+    */
+   private void performNFoldSteps(int steps) {
+      int remaining = steps;
+
+      graphConnected = (countConnected && graph.isConnected());
+      while (remaining > 0) {
+         // Gets the valid moves of the graph, if not known yet
+         if (!movesKnown) {
+            collectMoves();
+            prepareStay();
+            movesKnown = true;
+         }
+
+         // Steps staying at the graph
+         remaining -= stay(remaining);
+
+         // Moves to a neighbour graph
+         if (remaining > 0) {
+            int move = chooseMove();
+            makeMove(move);
+            countOperation(OPERATIONS[moveOperations[move]]);
+            movesKnown = false;
+            graphConnected = (countConnected && graph.isConnected());
+            remaining--;
+            if (graphConnected) {
+               connectedSteps++;
+            }
+         }
+      }
+   }
+
+   /**
+    * Makes steps of the chain skipping the ones surely without change: an
+    * equal operation, a NOOP or an operation on links or arcs with nodes
+    * for which it is not possible. Their probability only depends on the
+    * number of arcs and links, so the number of them before the next
+    * proposal is drawn at once, and then the proposal is made and checked
+    * as in performSteps, with the nodes drawn among the possible ones
+    *
+    * @param steps
+    */
+   private void performSkipSteps(int steps) {
+      int remaining = steps;
+      int x, y, z;
+
+      graphConnected = (countConnected && graph.isConnected());
+      while (remaining > 0) {
+         // Gets the probabilities of the proposals, if not known yet
+         if (!movesKnown) {
+            computeProposalProbabilities();
+            prepareStay();
+            movesKnown = true;
+         }
+
+         // Steps without change
+         remaining -= stay(remaining);
+         if (remaining == 0) {
+            break;
+         }
+
+         // Chooses the operation of the proposal
+         double value = generator.nextDouble() * leaveProbability;
+         int operationCode = 0;
+         while (operationCode < OPERATIONS.length - 1
+                 && value >= proposalProbabilities[operationCode]) {
+            value -= proposalProbabilities[operationCode];
+            operationCode++;
+         }
+         Operations operation = OPERATIONS[operationCode];
+
+         // Selects the nodes: for links and arcs until the operation is
+         // possible, for v-structures once
+         do {
+            x = generator.nextInt(numberVariables);
+            y = generator.nextInt(numberVariables);
+         } while (!isPossible(operation, x, y));
+         z = -1;
+         boolean possible = true;
+         if (operation == Operations.ADDVSTRUCTURE || operation == Operations.DELETEVSTRUCTURE) {
+            z = generator.nextInt(numberVariables);
+            possible = (operation == Operations.ADDVSTRUCTURE
+                    ? graph.isAddVStructurePossible(x, y, z) : graph.isDeleteVStructurePossible(x, y, z));
+         }
+
+         // Performs the proposal and checks the graph
+         if (possible) {
+            performOperation(operation, x, y, z);
+            if (checkGraph() == false) {
+               graph.undo();
+            } else {
+               countOperation(operation);
+               movesKnown = false;
+               graphConnected = (countConnected && graph.isConnected());
+            }
+         }
+         remaining--;
+
+         // Counts the step if the graph is connected
+         if (graphConnected) {
+            connectedSteps++;
+         }
+      }
+   }
+
+   /**
+    * Computes the probability of every operation being proposed in a step
+    * with possible nodes, from the number of arcs and links: arcs and
+    * links can be added between the nodes of any empty pair, in both
+    * orders
+    */
+   private void computeProposalProbabilities() {
+      double operation = 1.0 / OPERATIONS.length;
+      double pairs = (double) numberVariables * numberVariables;
+      int arcs = graph.getNumberArcs();
+      int links = graph.getNumberLinks();
+      int emptyPairs = numberVariables * (numberVariables - 1) / 2 - arcs - links;
+
+      if (proposalProbabilities == null) {
+         proposalProbabilities = new double[OPERATIONS.length];
+      }
+      proposalProbabilities[Operations.ADDLINK.ordinal()] = operation * 2 * emptyPairs / pairs;
+      proposalProbabilities[Operations.DELETELINK.ordinal()] = operation * 2 * links / pairs;
+      proposalProbabilities[Operations.ADDARC.ordinal()] = operation * 2 * emptyPairs / pairs;
+      proposalProbabilities[Operations.DELETEARC.ordinal()] = operation * arcs / pairs;
+      proposalProbabilities[Operations.ADDVSTRUCTURE.ordinal()] = operation;
+      proposalProbabilities[Operations.DELETEVSTRUCTURE.ordinal()] = operation;
+
+      leaveProbability = 0;
+      for (int i = 0; i < OPERATIONS.length; i++) {
+         leaveProbability += proposalProbabilities[i];
+      }
+   }
+
+   /**
+    * Tests if an operation on links or arcs is possible with two nodes
+    * (always true for the rest of operations)
+    *
+    * @param operation
+    * @param x
+    * @param y
+    * @return
+    */
+   private boolean isPossible(Operations operation, int x, int y) {
+      switch (operation) {
+         case ADDLINK:
+            return graph.isAddLinkPossible(x, y);
+
+         case DELETELINK:
+            return graph.isDeleteLinkPossible(x, y);
+
+         case ADDARC:
+            return graph.isAddArcPossible(x, y);
+
+         case DELETEARC:
+            return graph.isDeleteArcPossible(x, y);
+
+         default:
+            return true;
+      }
+   }
+
+   /**
+    * Prepares the values for drawing the steps at the current graph, from
+    * the probability of leaving it or making a proposal in a step
+    */
+   private void prepareStay() {
+      stayFactor = (leaveProbability > 0 ? 1 / Math.log1p(-leaveProbability) : 0);
+      equalShare = (1.0 / OPERATIONS.length) / (1 - leaveProbability);
+   }
+
+   /**
+    * Draws the number of steps the chain stays at the current graph (at
+    * most the remaining ones): their number follows a geometric
+    * distribution. The steps are credited to the counter of equal
+    * operations with their expected proportion
+    *
+    * @param remaining
+    * @return
+    */
+   private int stay(int remaining) {
+      int stay = remaining;
+
+      if (leaveProbability > 0) {
+         double stayLog = Math.log(1 - generator.nextDouble()) * stayFactor;
+         if (stayLog < remaining) {
+            stay = (int) stayLog;
+         }
+      }
+      eq += stay * equalShare;
+      if (graphConnected) {
+         connectedSteps += stay;
+      }
+
+      // Return the number of steps
+      return stay;
+   }
+
+   /**
+    * Gets the valid moves from the current graph, with the probability of
+    * every one of being proposed in a step: the operation is chosen among
+    * the OPERATIONS and the nodes at random, so a link or a v-structure
+    * can be proposed in two ways
+    */
+   private void collectMoves() {
+      double operation = 1.0 / OPERATIONS.length;
+      double pair = operation / ((double) numberVariables * numberVariables);
+      double triple = pair / numberVariables;
+
+      numberMoves = 0;
+      leaveProbability = 0;
+      for (int x = 0; x < numberVariables; x++) {
+         for (int y = 0; y < numberVariables; y++) {
+            if (x < y && graph.isAddLinkPossible(x, y)) {
+               tryMove(Operations.ADDLINK, x, y, -1, 2 * pair);
+            }
+            if (x < y && graph.isDeleteLinkPossible(x, y)) {
+               tryMove(Operations.DELETELINK, x, y, -1, 2 * pair);
+            }
+            if (graph.isAddArcPossible(x, y)) {
+               tryMove(Operations.ADDARC, x, y, -1, pair);
+            }
+            if (graph.isDeleteArcPossible(x, y)) {
+               tryMove(Operations.DELETEARC, x, y, -1, pair);
+            }
+         }
+      }
+
+      // V-structures x->z<-y, with x < y
+      for (int z = 0; z < numberVariables; z++) {
+         for (int x = 0; x < numberVariables; x++) {
+            for (int y = x + 1; y < numberVariables; y++) {
+               if (graph.isAddVStructurePossible(x, y, z)) {
+                  tryMove(Operations.ADDVSTRUCTURE, x, y, z, 2 * triple);
+               }
+               if (graph.isDeleteVStructurePossible(x, y, z)) {
+                  tryMove(Operations.DELETEVSTRUCTURE, x, y, z, 2 * triple);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Performs a move, checks the resulting graph and undoes it, storing
+    * the move if the graph is valid
+    *
+    * @param operation
+    * @param x
+    * @param y
+    * @param z (only for v-structures)
+    * @param probability probability of proposing the move in a step
+    */
+   private void tryMove(Operations operation, int x, int y, int z, double probability) {
+      int move = numberMoves;
+
+      // Gets more space for the moves, if needed
+      if (moveOperations == null || move == moveOperations.length) {
+         int capacity = (moveOperations == null ? 64 : 2 * move);
+         moveOperations = (moveOperations == null ? new int[capacity] : Arrays.copyOf(moveOperations, capacity));
+         moveX = (moveX == null ? new int[capacity] : Arrays.copyOf(moveX, capacity));
+         moveY = (moveY == null ? new int[capacity] : Arrays.copyOf(moveY, capacity));
+         moveZ = (moveZ == null ? new int[capacity] : Arrays.copyOf(moveZ, capacity));
+         moveProbabilities = (moveProbabilities == null ? new double[capacity] : Arrays.copyOf(moveProbabilities, capacity));
+      }
+      moveOperations[move] = operation.ordinal();
+      moveX[move] = x;
+      moveY[move] = y;
+      moveZ[move] = z;
+
+      // Keeps the move if the graph is valid after it
+      makeMove(move);
+      if (checkGraph()) {
+         moveProbabilities[move] = probability;
+         leaveProbability += probability;
+         numberMoves++;
+      }
+      graph.undo();
+   }
+
+   /**
+    * Chooses one of the valid moves with probability proportional to the
+    * one of proposing it
+    *
+    * @return
+    */
+   private int chooseMove() {
+      double value = generator.nextDouble() * leaveProbability;
+      int move = 0;
+
+      while (move < numberMoves - 1 && value >= moveProbabilities[move]) {
+         value -= moveProbabilities[move];
+         move++;
+      }
+
+      return move;
+   }
+
+   /**
+    * Performs one of the valid moves
+    *
+    * @param move
+    */
+   private void makeMove(int move) {
+      performOperation(OPERATIONS[moveOperations[move]], moveX[move], moveY[move], moveZ[move]);
+   }
+
+   /**
+    * Performs an operation on the graph
+    *
+    * @param operation
+    * @param x
+    * @param y
+    * @param z (only for v-structures)
+    */
+   private void performOperation(Operations operation, int x, int y, int z) {
+      switch (operation) {
+         case ADDLINK:
+            graph.addLink(x, y);
+            break;
+
+         case DELETELINK:
+            graph.deleteLink(x, y);
+            break;
+
+         case ADDARC:
+            graph.addArc(x, y);
+            break;
+
+         case DELETEARC:
+            graph.deleteArc(x, y);
+            break;
+
+         case ADDVSTRUCTURE:
+            graph.addVStructure(x, y, z);
+            break;
+
+         case DELETEVSTRUCTURE:
+            graph.deleteVStructure(x, y, z);
+            break;
+      }
+   }
+
+   /**
+    * Adds one to the counter of an operation
+    *
+    * @param operation
+    */
+   private void countOperation(Operations operation) {
+      switch (operation) {
+         case ADDLINK:
+            addLink++;
+            break;
+
+         case DELETELINK:
+            deleteLink++;
+            break;
+
+         case ADDARC:
+            addArc++;
+            break;
+
+         case DELETEARC:
+            deleteArc++;
+            break;
+
+         case ADDVSTRUCTURE:
+            addVStructure++;
+            break;
+
+         case DELETEVSTRUCTURE:
+            deleteVStructure++;
+            break;
+      }
+   }
+
+   /**
+    * Stores the current graph as a sample, with the proportions of the
+    * operations performed since the previous sample
+    *
+    * @param sampleId
+    * @param time time since the previous sample
+    */
+   private void storeSample(int sampleId, double time) {
       // Creates a sample object
-      Sample newSample=new Sample(graph,System.currentTimeMillis()-initialTime,id);
+      Sample newSample=new Sample(graph.toGraph(),time,sampleId);
       
       // Compute the probs for every operation   
-      eq = eq / numberOperations;
-      addLink = addLink / numberOperations;
-      deleteLink = deleteLink / numberOperations;
-      addArc = addArc / numberOperations;
-      deleteArc = deleteArc / numberOperations;
-      addVStructure = addVStructure / numberOperations;
-      deleteVStructure = deleteVStructure / numberOperations;
+      eq = eq / thinning;
+      addLink = addLink / thinning;
+      deleteLink = deleteLink / thinning;
+      addArc = addArc / thinning;
+      deleteArc = deleteArc / thinning;
+      addVStructure = addVStructure / thinning;
+      deleteVStructure = deleteVStructure / thinning;
+      connectedSteps = connectedSteps / thinning;
       
       // Sets the data members for the sample
       newSample.setEqualProb(eq);
@@ -261,6 +852,7 @@ public class SampleGenerator implements Runnable{
       newSample.setDeleteLinkProb(deleteLink);
       newSample.setAddVStructureProb(addVStructure);
       newSample.setDeleteVStructureProb(deleteVStructure);
+      newSample.setConnectedStepsProb(connectedSteps);
       newSample.setNumberOperations(numberOperations);
       newSample.setNumberSamples(numberSamples);
       
@@ -272,36 +864,68 @@ public class SampleGenerator implements Runnable{
       directed = graph.doNotContainsUndirectedLinks();
 
       // Check if there is a single connected component
-      connected = graph.containsSingleComponent();
-
-      // Check if both conditions are present
-      if (directed && connected) {
-         directedConnected=true;
-      }
+      connected = graph.isConnected();
       
       // At the end update the values to the simulation object
       updateValues();
    }
+
+   /**
+    * Sets the counters of the operations to zero
+    */
+   private void resetCounters() {
+      eq = 0;
+      addLink = 0;
+      deleteLink = 0;
+      addArc = 0;
+      deleteArc = 0;
+      addVStructure = 0;
+      deleteVStructure = 0;
+      connectedSteps = 0;
+   }
+
+
+   /**
+    * Checks the graph after the last operation, looking up the result in
+    * the table or, otherwise, first in the cache (if used)
+    *
+    * @return result of the check
+    */
+   private boolean checkGraph() {
+      boolean ok;
+
+      if (table != null) {
+         ok = table.isValid(packedGraph.getState());
+      } else if (cache == null) {
+         ok = graph.checkLastOperation();
+      } else {
+         int result = cache.get(graph.getStateHash());
+         if (result == CheckCache.UNKNOWN) {
+            ok = graph.checkLastOperation();
+            cache.put(graph.getStateHash(), ok);
+         } else {
+            ok = (result == CheckCache.VALID);
+         }
+      }
+
+      // Return the result
+      return ok;
+   }
    
    /**
     * Method for updating the values of the simulation
     */
    private void updateValues(){
-      simulation.setIterEqual(eq);
-      simulation.setIterAddLink(addLink);
-      simulation.setIterDeleteLink(deleteLink);
-      simulation.setIterAddArc(addArc);
-      simulation.setIterDeleteArc(deleteArc);
-      simulation.setIterAddVStructure(addVStructure);
-      simulation.setIterDeleteVStructure(deleteVStructure);
-      if (connected){
-         simulation.addCumConnected();
-      }
-      if (directed){
-         simulation.addCumDirected();
-      }
-      if (directedConnected){
-         simulation.addCumDirectedConnected();
-      }
+      double values[] = new double[SimulationStats.NUMBER_VALUES];
+
+      values[SimulationStats.EQUAL] = eq;
+      values[SimulationStats.ADD_LINK] = addLink;
+      values[SimulationStats.DELETE_LINK] = deleteLink;
+      values[SimulationStats.ADD_ARC] = addArc;
+      values[SimulationStats.DELETE_ARC] = deleteArc;
+      values[SimulationStats.ADD_VSTRUCTURE] = addVStructure;
+      values[SimulationStats.DELETE_VSTRUCTURE] = deleteVStructure;
+      values[SimulationStats.CONNECTED_STEPS] = connectedSteps;
+      simulation.getStatistics().addSample(values, directed, connected);
    }
 }
@@ -0,0 +1,243 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class for accumulating the results of the samples generated by several
+ * threads. Every thread adds its results to its own accumulator, so the
+ * threads do not compete for a common lock; the accumulators are merged
+ * when a snapshot is taken. The results of a sample are added to the
+ * accumulator at once, so a snapshot includes every sample completely or
+ * not at all
+ * @author mgomez, jmpeña
+ */
+public class SimulationStats {
+   /**
+    * Indexes of the proportions of steps accumulated for every sample
+    */
+   public static final int EQUAL = 0;
+   public static final int ADD_LINK = 1;
+   public static final int DELETE_LINK = 2;
+   public static final int ADD_ARC = 3;
+   public static final int DELETE_ARC = 4;
+   public static final int ADD_VSTRUCTURE = 5;
+   public static final int DELETE_VSTRUCTURE = 6;
+   public static final int CONNECTED_STEPS = 7;
+   public static final int NUMBER_VALUES = 8;
+   /**
+    * Data member to store the accumulator of every thread
+    */
+   private final ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>();
+   /**
+    * Data member to store all the accumulators
+    */
+   private final ConcurrentLinkedQueue<Accumulator> allAccumulators = new ConcurrentLinkedQueue<Accumulator>();
+
+   /**
+    * Adds the results of a sample
+    *
+    * @param values proportions of steps, indexed by EQUAL, ADD_LINK...
+    * @param directed true if the final graph has no undirected links
+    * @param connected true if the final graph is connected
+    */
+   public void addSample(double values[], boolean directed, boolean connected) {
+      getAccumulator().addSample(values, directed, connected);
+   }
+
+   /**
+    * Adds the hits and misses of a cache of checks
+    *
+    * @param hits
+    * @param misses
+    */
+   public void addCacheCounts(long hits, long misses) {
+      getAccumulator().addCacheCounts(hits, misses);
+   }
+
+   /**
+    * Gets the results accumulated until now
+    *
+    * @return
+    */
+   public Snapshot snapshot() {
+      Snapshot snapshot = new Snapshot();
+
+      for (Accumulator accumulator : allAccumulators) {
+         accumulator.addTo(snapshot);
+      }
+
+      // Return the snapshot
+      return snapshot;
+   }
+
+   /**
+    * Gets the accumulator of the current thread, getting a new one the
+    * first time
+    *
+    * @return
+    */
+   private Accumulator getAccumulator() {
+      Accumulator accumulator = accumulators.get();
+
+      if (accumulator == null) {
+         accumulator = new Accumulator();
+         accumulators.set(accumulator);
+         allAccumulators.add(accumulator);
+      }
+
+      // Return the accumulator
+      return accumulator;
+   }
+
+   /**
+    * Class for the results accumulated by a thread. Its lock is only
+    * taken by its thread and by the snapshots
+    */
+   private static class Accumulator {
+      /**
+       * Data members to store the sums of the results
+       */
+      private final double values[] = new double[NUMBER_VALUES];
+      private long samples;
+      private long directed;
+      private long connected;
+      private long directedConnected;
+      private long cacheHits;
+      private long cacheMisses;
+
+      /**
+       * Adds the results of a sample
+       *
+       * @param sampleValues
+       * @param isDirected
+       * @param isConnected
+       */
+      synchronized void addSample(double sampleValues[], boolean isDirected, boolean isConnected) {
+         for (int i = 0; i < NUMBER_VALUES; i++) {
+            values[i] += sampleValues[i];
+         }
+         samples++;
+         if (isDirected) {
+            directed++;
+         }
+         if (isConnected) {
+            connected++;
+         }
+         if (isDirected && isConnected) {
+            directedConnected++;
+         }
+      }
+
+      /**
+       * Adds the hits and misses of a cache of checks
+       *
+       * @param hits
+       * @param misses
+       */
+      synchronized void addCacheCounts(long hits, long misses) {
+         cacheHits += hits;
+         cacheMisses += misses;
+      }
+
+      /**
+       * Adds the results to a snapshot
+       *
+       * @param snapshot
+       */
+      synchronized void addTo(Snapshot snapshot) {
+         for (int i = 0; i < NUMBER_VALUES; i++) {
+            snapshot.values[i] += values[i];
+         }
+         snapshot.samples += samples;
+         snapshot.directed += directed;
+         snapshot.connected += connected;
+         snapshot.directedConnected += directedConnected;
+         snapshot.cacheHits += cacheHits;
+         snapshot.cacheMisses += cacheMisses;
+      }
+   }
+
+   /**
+    * Class for the results accumulated at a certain moment
+    */
+   public static class Snapshot {
+      /**
+       * Data members to store the sums of the results
+       */
+      private final double values[] = new double[NUMBER_VALUES];
+      private long samples;
+      private long directed;
+      private long connected;
+      private long directedConnected;
+      private long cacheHits;
+      private long cacheMisses;
+
+      /**
+       * Gets the sum of a proportion of steps over the samples
+       *
+       * @param index EQUAL, ADD_LINK...
+       * @return
+       */
+      public double getValue(int index) {
+         return values[index];
+      }
+
+      /**
+       * Gets the number of samples
+       *
+       * @return
+       */
+      public long getSamples() {
+         return samples;
+      }
+
+      /**
+       * Gets the number of samples without undirected links
+       *
+       * @return
+       */
+      public long getDirected() {
+         return directed;
+      }
+
+      /**
+       * Gets the number of connected samples
+       *
+       * @return
+       */
+      public long getConnected() {
+         return connected;
+      }
+
+      /**
+       * Gets the number of connected samples without undirected links
+       *
+       * @return
+       */
+      public long getDirectedConnected() {
+         return directedConnected;
+      }
+
+      /**
+       * Gets the number of hits of the caches of checks
+       *
+       * @return
+       */
+      public long getCacheHits() {
+         return cacheHits;
+      }
+
+      /**
+       * Gets the number of misses of the caches of checks
+       *
+       * @return
+       */
+      public long getCacheMisses() {
+         return cacheMisses;
+      }
+   }
+}
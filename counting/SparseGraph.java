@@ -0,0 +1,1022 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting;
+
+import java.util.Arrays;
+
+/**
+ * Class for representing sparse graphs with many variables. Every node
+ * keeps the lists of its parents, children and neighbours, so that the
+ * memory needed is proportional to the number of variables plus the
+ * number of edges, and the checks after every operation examine only the
+ * nodes around it. The connected components of the skeleton are kept
+ * updated as well
+ * @author mgomez, jmpeña
+ */
+public class SparseGraph implements GraphEngine {
+   /**
+    * Initial capacity of the lists of every node
+    */
+   private static final int INITIAL_CAPACITY = 4;
+   /**
+    * Data member to store the number of variables
+    */
+   private final int numberVariables;
+   /**
+    * Data members to store the lists of parents, children and neighbours
+    * of every node, and their sizes (the lists are not sorted)
+    */
+   private final int parents[][];
+   private final int children[][];
+   private final int neighbours[][];
+   private final int numberParents[];
+   private final int numberChildren[];
+   private final int numberNeighbours[];
+   /**
+    * Stores the number of arcs and links
+    */
+   private int numberArcs, numberLinks;
+   /**
+    * Data member to store the hash of the graph, equal to the one of
+    * Graph class for the same arcs and links
+    */
+   private long stateHash;
+   /**
+    * Stores the nodes related to the last operation
+    */
+   private int lastX, lastY, lastZ;
+   /**
+    * Stores the code of the last operation
+    */
+   private Operations lastOperation;
+   /**
+    * Data members to store the label of the component of every node, the
+    * number of components and the next label to use
+    */
+   private final int component[];
+   private int numberComponents;
+   private int nextLabel;
+   /**
+    * Data members for the searches: marks of the nodes (a node is marked
+    * if its mark is equal to the current epoch) and two queues
+    */
+   private final int mark[];
+   private final int pendingMark[];
+   private int epoch;
+   private final int queue[];
+   private final int otherQueue[];
+   /**
+    * Data members to store the number of nodes reached by the last
+    * search from both sides
+    */
+   private int reached, otherReached;
+
+   /**
+    * Class constructor
+    *
+    * @param numVariables
+    */
+   public SparseGraph(int numVariables) {
+      numberVariables = numVariables;
+
+      // Gets space for the lists
+      parents = new int[numVariables][INITIAL_CAPACITY];
+      children = new int[numVariables][INITIAL_CAPACITY];
+      neighbours = new int[numVariables][INITIAL_CAPACITY];
+      numberParents = new int[numVariables];
+      numberChildren = new int[numVariables];
+      numberNeighbours = new int[numVariables];
+
+      // Every node is a component at the beginning
+      component = new int[numVariables];
+      for (int i = 0; i < numVariables; i++) {
+         component[i] = i;
+      }
+      numberComponents = numVariables;
+      nextLabel = numVariables;
+
+      // Gets space for the searches
+      mark = new int[numVariables];
+      pendingMark = new int[numVariables];
+      epoch = 0;
+      queue = new int[numVariables];
+      otherQueue = new int[numVariables];
+
+      // Initialize data members
+      numberArcs = 0;
+      numberLinks = 0;
+      stateHash = 0;
+      lastX = -1;
+      lastY = -1;
+      lastOperation = Operations.NOOP;
+   }
+
+   @Override
+   public boolean isAddArcPossible(int x, int y) {
+      return (x != y && !adjacent(x, y));
+   }
+
+   @Override
+   public void addArc(int x, int y) {
+      setArc(x, y);
+      lastX = x;
+      lastY = y;
+      lastOperation = Operations.ADDARC;
+   }
+
+   @Override
+   public boolean isDeleteArcPossible(int x, int y) {
+      return (x != y && isChild(x, y));
+   }
+
+   @Override
+   public void deleteArc(int x, int y) {
+      clearArc(x, y);
+      lastX = x;
+      lastY = y;
+      lastOperation = Operations.DELETEARC;
+   }
+
+   @Override
+   public boolean isAddLinkPossible(int x, int y) {
+      return (x != y && !adjacent(x, y));
+   }
+
+   @Override
+   public void addLink(int x, int y) {
+      setLink(x, y);
+      lastX = x;
+      lastY = y;
+      lastOperation = Operations.ADDLINK;
+   }
+
+   @Override
+   public boolean isDeleteLinkPossible(int x, int y) {
+      return (x != y && isNeighbour(x, y));
+   }
+
+   @Override
+   public void deleteLink(int x, int y) {
+      if (x != y && isNeighbour(x, y)) {
+         clearLink(x, y);
+         lastX = x;
+         lastY = y;
+         lastOperation = Operations.DELETELINK;
+      }
+   }
+
+   @Override
+   public boolean isAddVStructurePossible(int x, int y, int z) {
+      return (x != y && x != z && y != z && !adjacent(x, y)
+              && !adjacent(x, z) && !adjacent(y, z));
+   }
+
+   @Override
+   public void addVStructure(int x, int y, int z) {
+      setArc(x, z);
+      setArc(y, z);
+      lastX = x;
+      lastY = y;
+      lastZ = z;
+      lastOperation = Operations.ADDVSTRUCTURE;
+   }
+
+   @Override
+   public boolean isDeleteVStructurePossible(int x, int y, int z) {
+      return (x != y && x != z && y != z && !adjacent(x, y)
+              && isChild(x, z) && isChild(y, z));
+   }
+
+   @Override
+   public void deleteVStructure(int x, int y, int z) {
+      clearArc(x, z);
+      clearArc(y, z);
+      lastX = x;
+      lastY = y;
+      lastZ = z;
+      lastOperation = Operations.DELETEVSTRUCTURE;
+   }
+
+   /**
+    * Undo the last operation. A second call does nothing
+    */
+   @Override
+   public void undo() {
+      switch (lastOperation) {
+         case EQUAL:
+         case NOOP:
+            break;
+
+         case ADDARC:
+            clearArc(lastX, lastY);
+            break;
+
+         case DELETEARC:
+            setArc(lastX, lastY);
+            break;
+
+         case ADDLINK:
+            clearLink(lastX, lastY);
+            break;
+
+         case DELETELINK:
+            setLink(lastX, lastY);
+            break;
+
+         case ADDVSTRUCTURE:
+            clearArc(lastX, lastZ);
+            clearArc(lastY, lastZ);
+            break;
+
+         case DELETEVSTRUCTURE:
+            setArc(lastX, lastZ);
+            setArc(lastY, lastZ);
+            break;
+      }
+
+      // The operation is undone only once
+      lastOperation = Operations.NOOP;
+   }
+
+   /**
+    * Checks the whole graph
+    *
+    * @return result of the check
+    */
+   @Override
+   public boolean check() {
+      boolean ok = !containsFlag() && isAcyclic();
+
+      // Checks the components of the links one by one
+      if (ok) {
+         boolean checked[] = new boolean[numberVariables];
+         for (int i = 0; i < numberVariables && ok; i++) {
+            if (!checked[i]) {
+               ok = isChordalComponent(i);
+               for (int k = 0; k < reached; k++) {
+                  checked[queue[k]] = true;
+               }
+            }
+         }
+      }
+
+      // Checks the protection of all the arrows
+      for (int i = 0; i < numberVariables && ok; i++) {
+         ok = !containsUnprotectedArrowsOf(i);
+      }
+
+      // return ok
+      return ok;
+   }
+
+   /**
+    * Checks the graph after the last operation, examining only the nodes
+    * around it (as Graph.checkLastOperation does). The graph previous to
+    * the last operation is assumed to pass the check
+    *
+    * @return result of the check
+    */
+   @Override
+   public boolean checkLastOperation() {
+      boolean ok = true;
+
+      switch (lastOperation) {
+         case ADDARC:
+            ok = !containsFlagAround(lastX, lastY)
+                    && !reaches(lastY, lastX, lastX)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case DELETEARC:
+            ok = !containsFlagAround(lastX, lastY)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case ADDLINK:
+            ok = !containsFlagAround(lastX, lastY)
+                    && isChordalComponent(lastX)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case DELETELINK:
+            ok = !containsFlagAround(lastX, lastY)
+                    && isChordalComponent(lastX) && isChordalComponent(lastY)
+                    && !containsUnprotectedArrowsAround(lastX, lastY);
+            break;
+
+         case ADDVSTRUCTURE:
+            ok = !containsFlagAround(lastX, lastZ) && !containsFlagAround(lastY, lastZ)
+                    && !reaches(lastZ, lastX, lastY)
+                    && !containsUnprotectedArrowsAround(lastX, lastZ)
+                    && !containsUnprotectedArrowsAround(lastY, lastZ);
+            break;
+
+         case DELETEVSTRUCTURE:
+            ok = !containsFlagAround(lastX, lastZ) && !containsFlagAround(lastY, lastZ)
+                    && !containsUnprotectedArrowsAround(lastX, lastZ)
+                    && !containsUnprotectedArrowsAround(lastY, lastZ);
+            break;
+      }
+
+      // return ok
+      return ok;
+   }
+
+   /**
+    * Tests if the skeleton of the graph has a single connected component
+    *
+    * @return
+    */
+   @Override
+   public boolean isConnected() {
+      return numberComponents == 1;
+   }
+
+   /**
+    * Gets the number of connected components of the skeleton
+    *
+    * @return
+    */
+   public int getNumberSkeletonComponents() {
+      return numberComponents;
+   }
+
+   /**
+    * Tests if the graph do not contains undirected links
+    *
+    * @return
+    */
+   @Override
+   public boolean doNotContainsUndirectedLinks() {
+      return numberLinks == 0;
+   }
+
+   /**
+    * Gets the hash of the graph
+    *
+    * @return
+    */
+   @Override
+   public long getStateHash() {
+      return stateHash;
+   }
+
+   /**
+    * Gets the number of variables
+    *
+    * @return
+    */
+   @Override
+   public int getNumberVariables() {
+      return numberVariables;
+   }
+
+   /**
+    * Gets the number of arcs
+    *
+    * @return
+    */
+   @Override
+   public int getNumberArcs() {
+      return numberArcs;
+   }
+
+   /**
+    * Gets the number of links
+    *
+    * @return
+    */
+   @Override
+   public int getNumberLinks() {
+      return numberLinks;
+   }
+
+   /**
+    * Gets the graph as an object of Graph class
+    *
+    * @return
+    */
+   @Override
+   public Graph toGraph() {
+      Graph graph = new Graph(numberVariables);
+
+      for (int x = 0; x < numberVariables; x++) {
+         for (int k = 0; k < numberChildren[x]; k++) {
+            graph.addArc(x, children[x][k]);
+         }
+         for (int k = 0; k < numberNeighbours[x]; k++) {
+            if (x < neighbours[x][k]) {
+               graph.addLink(x, neighbours[x][k]);
+            }
+         }
+      }
+
+      return graph;
+   }
+
+////////////////////////////// PRIVATE METHODS ////////////////////////////
+   /**
+    * Checks if there are flags: arrows i->j with a neighbour of j not
+    * being child of i
+    *
+    * @return
+    */
+   private boolean containsFlag() {
+      boolean found = false;
+
+      for (int i = 0; i < numberVariables && !found; i++) {
+         for (int k = 0; k < numberChildren[i] && !found; k++) {
+            int j = children[i][k];
+            for (int l = 0; l < numberNeighbours[j] && !found; l++) {
+               found = !isChild(i, neighbours[j][l]);
+            }
+         }
+      }
+
+      return found;
+   }
+
+   /**
+    * Checks if there are flags (i->j-k with no arc i->k) using the pair of
+    * nodes a and b as one of the three pairs of the flag
+    *
+    * @param a
+    * @param b
+    * @return
+    */
+   private boolean containsFlagAround(int a, int b) {
+      return containsFlagAroundPair(a, b) || containsFlagAroundPair(b, a);
+   }
+
+   /**
+    * Checks the flags where the ordered pair (a,b) takes the role of i->j,
+    * j-k or i->k
+    *
+    * @param a
+    * @param b
+    * @return
+    */
+   private boolean containsFlagAroundPair(int a, int b) {
+      boolean found = false;
+      boolean arc = isChild(a, b);
+
+      // a->b as i->j: neighbours of b not children of a
+      if (arc) {
+         for (int k = 0; k < numberNeighbours[b] && !found; k++) {
+            found = !isChild(a, neighbours[b][k]);
+         }
+      }
+
+      // a-b as j-k: parents of a not being parents of b
+      if (!arc && isNeighbour(a, b)) {
+         for (int k = 0; k < numberParents[a] && !found; k++) {
+            found = !isChild(parents[a][k], b);
+         }
+      }
+
+      // a and b as i and k without a->b: children of a neighbours of b
+      if (!arc) {
+         for (int k = 0; k < numberChildren[a] && !found; k++) {
+            found = isNeighbour(children[a][k], b);
+         }
+      }
+
+      // Return the result
+      return found;
+   }
+
+   /**
+    * Tests if there are no directed cycles, removing the nodes without
+    * parents (Kahn's algorithm)
+    *
+    * @return
+    */
+   private boolean isAcyclic() {
+      int remaining[] = new int[numberVariables];
+      int top = 0;
+      int removed = 0;
+
+      for (int i = 0; i < numberVariables; i++) {
+         remaining[i] = numberParents[i];
+         if (remaining[i] == 0) {
+            queue[top++] = i;
+         }
+      }
+
+      while (top > 0) {
+         int node = queue[--top];
+         removed++;
+         for (int k = 0; k < numberChildren[node]; k++) {
+            int child = children[node][k];
+            remaining[child]--;
+            if (remaining[child] == 0) {
+               queue[top++] = child;
+            }
+         }
+      }
+
+      return removed == numberVariables;
+   }
+
+   /**
+    * Tests if any of two nodes can be reached from a node following the
+    * arcs. Used for checking cycles after adding arcs into the source
+    * node, assuming the graph had no cycles before
+    *
+    * @param source
+    * @param target
+    * @param otherTarget
+    * @return
+    */
+   private boolean reaches(int source, int target, int otherTarget) {
+      int current = nextEpoch();
+      int top = 0;
+      boolean found = false;
+
+      mark[source] = current;
+      queue[top++] = source;
+      while (top > 0 && !found) {
+         int node = queue[--top];
+         for (int k = 0; k < numberChildren[node] && !found; k++) {
+            int child = children[node][k];
+            if (child == target || child == otherTarget) {
+               found = true;
+            } else if (mark[child] != current) {
+               mark[child] = current;
+               queue[top++] = child;
+            }
+         }
+      }
+
+      return found;
+   }
+
+   /**
+    * Checks if the undirected component (considering links alone) where a
+    * node belongs to is chordal: its nodes can be removed one by one, every
+    * time removing a node whose remaining neighbours are complete. A node
+    * is examined again only when one of its neighbours is removed. The
+    * nodes of the component are left in queue (reached nodes)
+    *
+    * @param node
+    * @return
+    */
+   private boolean isChordalComponent(int node) {
+      int alive = nextEpoch();
+
+      // Gets the component with a search over the neighbours
+      mark[node] = alive;
+      queue[0] = node;
+      reached = 1;
+      for (int head = 0; head < reached; head++) {
+         int current = queue[head];
+         for (int k = 0; k < numberNeighbours[current]; k++) {
+            int other = neighbours[current][k];
+            if (mark[other] != alive) {
+               mark[other] = alive;
+               queue[reached++] = other;
+            }
+         }
+      }
+
+      // All the nodes must be examined at the beginning
+      int top = 0;
+      for (int k = 0; k < reached; k++) {
+         otherQueue[top++] = queue[k];
+         pendingMark[queue[k]] = alive;
+      }
+
+      // Removes the nodes whose alive neighbours are complete
+      int removed = 0;
+      while (top > 0) {
+         int current = otherQueue[--top];
+         pendingMark[current] = 0;
+         if (isSimplicial(current, alive)) {
+            mark[current] = 0;
+            removed++;
+            for (int k = 0; k < numberNeighbours[current]; k++) {
+               int other = neighbours[current][k];
+               if (mark[other] == alive && pendingMark[other] != alive) {
+                  pendingMark[other] = alive;
+                  otherQueue[top++] = other;
+               }
+            }
+         }
+      }
+
+      return removed == reached;
+   }
+
+   /**
+    * Checks if the alive neighbours of a node are linked between them
+    *
+    * @param node
+    * @param alive mark of the alive nodes
+    * @return
+    */
+   private boolean isSimplicial(int node, int alive) {
+      boolean result = true;
+
+      for (int k = 0; k < numberNeighbours[node] && result; k++) {
+         int u = neighbours[node][k];
+         if (mark[u] == alive) {
+            for (int l = k + 1; l < numberNeighbours[node] && result; l++) {
+               int w = neighbours[node][l];
+               if (mark[w] == alive) {
+                  result = isNeighbour(u, w);
+               }
+            }
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Checks if there are arrows not strongly protected among the arrows
+    * whose protection may depend on the pair of nodes a and b: the arrows
+    * of a or b and, if a and b are adjacent, the arrows i->j having a and b
+    * as neighbours of i and parents of j
+    *
+    * @param a
+    * @param b
+    * @return
+    */
+   private boolean containsUnprotectedArrowsAround(int a, int b) {
+      boolean found = containsUnprotectedArrowsOf(a) || containsUnprotectedArrowsOf(b);
+
+      // Considers the arrows for which a and b are the two parents
+      // of the configuration with four nodes
+      if (!found && adjacent(a, b)) {
+         for (int k = 0; k < numberNeighbours[a] && !found; k++) {
+            int i = neighbours[a][k];
+            if (isNeighbour(i, b)) {
+               for (int l = 0; l < numberChildren[a] && !found; l++) {
+                  int j = children[a][l];
+                  if (isChild(b, j) && isChild(i, j)) {
+                     found = !isProtected(i, j);
+                  }
+               }
+            }
+         }
+      }
+
+      // Return the result
+      return found;
+   }
+
+   /**
+    * Checks if some arrow into or out of a node is not strongly protected
+    *
+    * @param node
+    * @return
+    */
+   private boolean containsUnprotectedArrowsOf(int node) {
+      boolean found = false;
+
+      for (int k = 0; k < numberParents[node] && !found; k++) {
+         found = !isProtected(parents[node][k], node);
+      }
+      for (int k = 0; k < numberChildren[node] && !found; k++) {
+         found = !isProtected(node, children[node][k]);
+      }
+
+      // Return the result
+      return found;
+   }
+
+   /**
+    * Checks if the arrow i->j is strongly protected
+    *
+    * @param i tail of the arrow
+    * @param j head of the arrow
+    * @return
+    */
+   private boolean isProtected(int i, int j) {
+      boolean protectedArrow = false;
+
+      // k->i with k and j non adjacent
+      for (int k = 0; k < numberParents[i] && !protectedArrow; k++) {
+         protectedArrow = !adjacent(parents[i][k], j);
+      }
+
+      // k->j with k and i non adjacent (k different from i) or i->k->j
+      for (int k = 0; k < numberParents[j] && !protectedArrow; k++) {
+         int other = parents[j][k];
+         protectedArrow = (other != i && (!adjacent(other, i) || isChild(i, other)));
+      }
+
+      // Two non adjacent neighbours of i being parents of j
+      for (int k = 0; k < numberNeighbours[i] && !protectedArrow; k++) {
+         int u = neighbours[i][k];
+         if (isChild(u, j)) {
+            for (int l = k + 1; l < numberNeighbours[i] && !protectedArrow; l++) {
+               int w = neighbours[i][l];
+               protectedArrow = isChild(w, j) && !adjacent(u, w);
+            }
+         }
+      }
+
+      return protectedArrow;
+   }
+
+   /**
+    * Adds the arc from x to y
+    *
+    * @param x
+    * @param y
+    */
+   private void setArc(int x, int y) {
+      joinComponents(x, y);
+      add(children, numberChildren, x, y);
+      add(parents, numberParents, y, x);
+      numberArcs++;
+      stateHash ^= Graph.cellKey(x, y, Graph.DIRECTED);
+   }
+
+   /**
+    * Removes the arc from x to y
+    *
+    * @param x
+    * @param y
+    */
+   private void clearArc(int x, int y) {
+      remove(children, numberChildren, x, y);
+      remove(parents, numberParents, y, x);
+      numberArcs--;
+      stateHash ^= Graph.cellKey(x, y, Graph.DIRECTED);
+      splitComponents(x, y);
+   }
+
+   /**
+    * Adds the undirected link between x and y
+    *
+    * @param x
+    * @param y
+    */
+   private void setLink(int x, int y) {
+      joinComponents(x, y);
+      add(neighbours, numberNeighbours, x, y);
+      add(neighbours, numberNeighbours, y, x);
+      numberLinks++;
+      stateHash ^= Graph.cellKey(x, y, Graph.UNDIRECTED) ^ Graph.cellKey(y, x, Graph.UNDIRECTED);
+   }
+
+   /**
+    * Removes the undirected link between x and y
+    *
+    * @param x
+    * @param y
+    */
+   private void clearLink(int x, int y) {
+      remove(neighbours, numberNeighbours, x, y);
+      remove(neighbours, numberNeighbours, y, x);
+      numberLinks--;
+      stateHash ^= Graph.cellKey(x, y, Graph.UNDIRECTED) ^ Graph.cellKey(y, x, Graph.UNDIRECTED);
+      splitComponents(x, y);
+   }
+
+   /**
+    * Updates the components when x and y are going to be adjacent: the
+    * smaller of both components gets the label of the other one
+    *
+    * @param x
+    * @param y
+    */
+   private void joinComponents(int x, int y) {
+      if (component[x] != component[y]) {
+         if (searchBoth(x, y) == 1) {
+            relabel(queue, reached, component[y]);
+         } else {
+            relabel(otherQueue, otherReached, component[x]);
+         }
+         numberComponents--;
+      }
+   }
+
+   /**
+    * Updates the components once x and y are not adjacent any more: if
+    * they are not connected, the smaller part gets a new label
+    *
+    * @param x
+    * @param y
+    */
+   private void splitComponents(int x, int y) {
+      int result = searchBoth(x, y);
+
+      if (result == 1) {
+         relabel(queue, reached, nextLabel++);
+         numberComponents++;
+      } else if (result == 2) {
+         relabel(otherQueue, otherReached, nextLabel++);
+         numberComponents++;
+      }
+   }
+
+   /**
+    * Makes two searches over the skeleton at the same time, from x and
+    * from y, stopping as soon as they meet or one of them reaches all the
+    * nodes of its component. The cost is proportional to the size of the
+    * smaller component
+    *
+    * @param x
+    * @param y
+    * @return 0 if the searches meet, 1 if the search from x ends first
+    * (its nodes are in queue) and 2 if the search from y does (its nodes
+    * are in otherQueue)
+    */
+   private int searchBoth(int x, int y) {
+      int sideX = nextEpoch();
+      int sideY = nextEpoch();
+      int headX = 0, headY = 0;
+      int result = -1;
+
+      mark[x] = sideX;
+      queue[0] = x;
+      reached = 1;
+      mark[y] = sideY;
+      otherQueue[0] = y;
+      otherReached = 1;
+
+      while (result == -1) {
+         // Expands a node from x
+         if (headX == reached) {
+            result = 1;
+         } else if (expand(queue[headX++], sideX, sideY, queue, true)) {
+            result = 0;
+         }
+
+         // Expands a node from y
+         if (result == -1) {
+            if (headY == otherReached) {
+               result = 2;
+            } else if (expand(otherQueue[headY++], sideY, sideX, otherQueue, false)) {
+               result = 0;
+            }
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Adds to a search the nodes adjacent to a node
+    *
+    * @param node
+    * @param side mark of the nodes of this search
+    * @param otherSide mark of the nodes of the other search
+    * @param nodes queue of this search
+    * @param first true for the search using queue
+    * @return true if a node of the other search is reached
+    */
+   private boolean expand(int node, int side, int otherSide, int nodes[], boolean first) {
+      boolean met = false;
+      int size = (first ? reached : otherReached);
+
+      for (int list = 0; list < 3 && !met; list++) {
+         int adjacents[] = (list == 0 ? parents[node] : (list == 1 ? children[node] : neighbours[node]));
+         int number = (list == 0 ? numberParents[node] : (list == 1 ? numberChildren[node] : numberNeighbours[node]));
+         for (int k = 0; k < number && !met; k++) {
+            int other = adjacents[k];
+            if (mark[other] == otherSide) {
+               met = true;
+            } else if (mark[other] != side) {
+               mark[other] = side;
+               nodes[size++] = other;
+            }
+         }
+      }
+
+      // Stores the new size of the search
+      if (first) {
+         reached = size;
+      } else {
+         otherReached = size;
+      }
+      return met;
+   }
+
+   /**
+    * Sets the label of the component of some nodes
+    *
+    * @param nodes
+    * @param number
+    * @param label
+    */
+   private void relabel(int nodes[], int number, int label) {
+      for (int k = 0; k < number; k++) {
+         component[nodes[k]] = label;
+      }
+   }
+
+   /**
+    * Gets a new mark for the searches, clearing the marks when the
+    * counter is exhausted
+    *
+    * @return
+    */
+   private int nextEpoch() {
+      if (epoch == Integer.MAX_VALUE) {
+         Arrays.fill(mark, 0);
+         Arrays.fill(pendingMark, 0);
+         epoch = 0;
+      }
+      return ++epoch;
+   }
+
+   /**
+    * Checks if y is a child of x, looking in the shorter list
+    *
+    * @param x
+    * @param y
+    * @return
+    */
+   private boolean isChild(int x, int y) {
+      if (numberChildren[x] <= numberParents[y]) {
+         return contains(children[x], numberChildren[x], y);
+      } else {
+         return contains(parents[y], numberParents[y], x);
+      }
+   }
+
+   /**
+    * Checks if there is a link between x and y, looking in the shorter
+    * list
+    *
+    * @param x
+    * @param y
+    * @return
+    */
+   private boolean isNeighbour(int x, int y) {
+      if (numberNeighbours[x] <= numberNeighbours[y]) {
+         return contains(neighbours[x], numberNeighbours[x], y);
+      } else {
+         return contains(neighbours[y], numberNeighbours[y], x);
+      }
+   }
+
+   /**
+    * Checks if two nodes are adjacent
+    *
+    * @param x
+    * @param y
+    * @return
+    */
+   private boolean adjacent(int x, int y) {
+      return isChild(x, y) || isChild(y, x) || isNeighbour(x, y);
+   }
+
+   /**
+    * Checks if a list contains a node
+    *
+    * @param list
+    * @param size
+    * @param node
+    * @return
+    */
+   private static boolean contains(int list[], int size, int node) {
+      boolean found = false;
+
+      for (int k = 0; k < size && !found; k++) {
+         found = (list[k] == node);
+      }
+
+      return found;
+   }
+
+   /**
+    * Adds a node to the list of another one, getting more space if needed
+    *
+    * @param lists
+    * @param sizes
+    * @param owner
+    * @param node
+    */
+   private static void add(int lists[][], int sizes[], int owner, int node) {
+      if (sizes[owner] == lists[owner].length) {
+         lists[owner] = Arrays.copyOf(lists[owner], 2 * sizes[owner]);
+      }
+      lists[owner][sizes[owner]++] = node;
+   }
+
+   /**
+    * Removes a node from the list of another one (the last node of the
+    * list takes its place)
+    *
+    * @param lists
+    * @param sizes
+    * @param owner
+    * @param node
+    */
+   private static void remove(int lists[][], int sizes[], int owner, int node) {
+      int list[] = lists[owner];
+      int k = 0;
+
+      while (list[k] != node) {
+         k++;
+      }
+      list[k] = list[--sizes[owner]];
+   }
+}
@@ -0,0 +1,92 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting.vector;
+
+import counting.RowKernels;
+import java.util.Random;
+
+/**
+ * Class for comparing the time of the scalar row kernels and the ones
+ * using the Vector API, on random matrices with 32, 64 and 128 variables.
+ * Run with --add-modules jdk.incubator.vector
+ * @author mgomez, jmpeña
+ */
+public class RowKernelsBenchmark {
+   /**
+    * Numbers of variables to consider
+    */
+   private static final int SIZES[] = {32, 64, 128};
+   /**
+    * Number of matrices and of passes over them
+    */
+   private static final int MATRICES = 64;
+   private static final int PASSES = 2000;
+   /**
+    * Result of the kernels, printed so that the work is not discarded
+    */
+   private static long checksum = 0;
+
+   /**
+    * Main method
+    *
+    * @param args the command line arguments
+    */
+   public static void main(String[] args) {
+      RowKernels scalar = RowKernels.getScalar();
+      RowKernels vector = new VectorRowKernels();
+      Random generator = new Random(0);
+
+      System.out.println("Kernels: " + scalar.getName() + " / " + vector.getName());
+      for (int n : SIZES) {
+         // Random matrices with about one arc and one link per row, as
+         // in the samples
+         int matrices[][][] = new int[MATRICES][n][n];
+         for (int m = 0; m < MATRICES; m++) {
+            for (int i = 0; i < n; i++) {
+               for (int j = 0; j < n; j++) {
+                  int value = generator.nextInt(n);
+                  matrices[m][i][j] = (value < 3 ? value : 0);
+               }
+            }
+         }
+
+         // Warm up, then measure
+         run(scalar, matrices);
+         run(vector, matrices);
+         double scalarTime = run(scalar, matrices);
+         double vectorTime = run(vector, matrices);
+         System.out.printf("n=%4d  scalar %8.1f ns/matrix  vector %8.1f ns/matrix  speedup %5.2f\n",
+                 n, scalarTime, vectorTime, scalarTime / vectorTime);
+      }
+      System.out.println("(checksum " + checksum + ")");
+   }
+
+   /**
+    * Runs the kernels over the matrices as removeDirectedLinks does
+    *
+    * @param kernels
+    * @param matrices
+    * @return time per matrix (ns)
+    */
+   private static double run(RowKernels kernels, int matrices[][][]) {
+      long sum = 0;
+      long initialTime = System.nanoTime();
+
+      for (int pass = 0; pass < PASSES; pass++) {
+         for (int matrix[][] : matrices) {
+            for (int i = 0; i < matrix.length; i++) {
+               int j = kernels.indexOf(matrix[i], 0, 1);
+               while (j != -1) {
+                  sum += j;
+                  j = kernels.indexOf(matrix[i], j + 1, 1);
+               }
+            }
+         }
+      }
+      checksum += sum;
+
+      return (double) (System.nanoTime() - initialTime) / ((long) PASSES * matrices.length);
+   }
+}
@@ -0,0 +1,53 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package counting.vector;
+
+import counting.RowKernels;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of the row kernels using the Java Vector API: the cells
+ * are compared in blocks of the preferred vector size of the machine.
+ * Compile and run with --add-modules jdk.incubator.vector, and use with
+ * -Dcounting.vector=true
+ * @author mgomez, jmpeña
+ */
+public class VectorRowKernels extends RowKernels {
+   /**
+    * Species of the vectors used
+    */
+   private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+   @Override
+   public int indexOf(int row[], int from, int value) {
+      int result = -1;
+      int j = from;
+
+      // Compares the complete blocks
+      int bound = from + SPECIES.loopBound(row.length - from);
+      for (; j < bound && result == -1; j += SPECIES.length()) {
+         VectorMask<Integer> found = IntVector.fromArray(SPECIES, row, j).eq(value);
+         if (found.anyTrue()) {
+            result = j + found.firstTrue();
+         }
+      }
+
+      // Compares the rest of cells
+      for (; j < row.length && result == -1; j++) {
+         if (row[j] == value) {
+            result = j;
+         }
+      }
+
+      return result;
+   }
+
+   @Override
+   public String getName() {
+      return "vector (" + SPECIES.length() + " ints)";
+   }
+}